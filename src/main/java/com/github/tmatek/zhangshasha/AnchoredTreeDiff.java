@@ -0,0 +1,470 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Utility class for a heuristic diff of very large trees, which share long unique subtrees. As in GumTree, identical
+ * subtrees which occur exactly once in both trees are matched first (the anchors); the anchors are then used to align
+ * the children of matched nodes top-down, and only the regions of siblings between aligned children are compared with
+ * the exact Zhang-Shasha algorithm. The regions are independent, so they are calculated in parallel.
+ * <br><br>
+ * The result is a valid list of {@link TreeTransformation}s, which transforms the first tree into the second by
+ * {@link TreeDistance#transformTree(EditableTreeNode, List)}. Its sum of costs is an upper bound of the tree
+ * distance, which is reached when the trees only differ within the compared regions.
+ */
+public final class AnchoredTreeDiff {
+
+    // the label of virtual roots, which join the sibling subtrees of a region into a single tree
+    private static final int VIRTUAL_ROOT = -1;
+
+    private AnchoredTreeDiff() {
+    }
+
+    /**
+     * Calculates a list of tree transformations which transform tree {@code t1} into {@code t2}, as
+     * {@link TreeDistance#treeDistanceZhangShasha(EditableTreeNode, EditableTreeNode)}, but matching unique identical
+     * subtrees first. Subtrees are identical if their nodes have equal labels, given by {@code labeler}, and equal
+     * shapes.
+     *
+     * @param t1      the first tree structure
+     * @param t2      the second tree structure
+     * @param labeler a function returning the label of a tree node, compared by {@code equals}
+     * @return a list of tree transformations required to transform first tree into the second
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     */
+    public static List<TreeTransformation> diff(EditableTreeNode t1, EditableTreeNode t2,
+                                                Function<? super TreeNode, ?> labeler) {
+        return diff(t1, t2, labeler, new DistanceOptions());
+    }
+
+    /**
+     * Calculates a list of tree transformations which transform tree {@code t1} into {@code t2}, as
+     * {@link #diff(EditableTreeNode, EditableTreeNode, Function)}. Regions are compared concurrently on the pool of
+     * {@code options}, so the transformation costs of tree nodes may be requested from several threads at once.
+     *
+     * @param t1      the first tree structure
+     * @param t2      the second tree structure
+     * @param labeler a function returning the label of a tree node, compared by {@code equals}
+     * @param options the options of the calculations of regions
+     * @return a list of tree transformations required to transform first tree into the second
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     */
+    public static List<TreeTransformation> diff(EditableTreeNode t1, EditableTreeNode t2,
+                                                Function<? super TreeNode, ?> labeler, DistanceOptions options) {
+        if (t1 == null || t2 == null || labeler == null || options == null)
+            throw new IllegalArgumentException("Both tree structures, the labeler and the options must not be null");
+
+        NodeIndex first = NodeIndex.of(t1), second = NodeIndex.of(t2);
+        NodeCostModel costs = new NodeCostModel(first, second);
+
+        Map<Object, Integer> labels = new HashMap<>();
+        Side side1 = new Side(first, labeler, labels), side2 = new Side(second, labeler, labels);
+        int[] mapping = new Diff(side1, side2, costs, options).run();
+        return EditScripts.fromMapping(first, second, mapping, costs);
+    }
+
+    /**
+     * The nodes of one tree with their interned labels, children and subtree hashes, indexed by postorder IDs.
+     */
+    private static final class Side {
+
+        private final IndexedTree tree;
+
+        private final int[] labels;
+
+        // children of every node in postorder, node k has children children[childOffsets[k], childOffsets[k + 1])
+        private final int[] childOffsets, children;
+
+        private final long[] hashes;
+
+        Side(NodeIndex index, Function<? super TreeNode, ?> labeler, Map<Object, Integer> ids) {
+            this.tree = index.tree();
+            int n = this.tree.size();
+
+            this.labels = new int[n];
+            for (int k = 0; k < n; k++)
+                this.labels[k] = ids.computeIfAbsent(labeler.apply(index.node(k)), label -> ids.size());
+
+            this.childOffsets = new int[n + 1];
+            for (int k = 0; k < n - 1; k++)
+                this.childOffsets[this.tree.getParent(k) + 1]++;
+
+            for (int k = 0; k < n; k++)
+                this.childOffsets[k + 1] += this.childOffsets[k];
+
+            this.children = new int[Math.max(0, n - 1)];
+            int[] next = Arrays.copyOf(this.childOffsets, n);
+            for (int k = 0; k < n - 1; k++)
+                this.children[next[this.tree.getParent(k)]++] = k;
+
+            // children precede their parents in postorder
+            this.hashes = new long[n];
+            for (int k = 0; k < n; k++) {
+                long hash = this.labels[k] * 0x9E3779B97F4A7C15L + 1;
+                for (int c = this.childOffsets[k]; c < this.childOffsets[k + 1]; c++)
+                    hash = 31 * hash + this.hashes[this.children[c]];
+
+                hash ^= hash >>> 29;
+                this.hashes[k] = hash * 0xBF58476D1CE4E5B9L + size(k);
+            }
+        }
+
+        int size(int node) {
+            return node - this.tree.getLeftmostLeaf(node) + 1;
+        }
+
+        int leftmost(int node) {
+            return this.tree.getLeftmostLeaf(node);
+        }
+
+        /**
+         * Returns the nodes with hashes occurring exactly once, by their hashes.
+         */
+        Map<Long, Integer> uniqueSubtrees() {
+            Map<Long, Integer> unique = new HashMap<>();
+            for (int k = 0; k < this.hashes.length; k++)
+                unique.merge(this.hashes[k], k, (previous, node) -> -1);
+
+            return unique;
+        }
+    }
+
+    /**
+     * A single diff of two trees, accumulating the mapping between their nodes.
+     */
+    private static final class Diff {
+
+        private final Side side1, side2;
+
+        private final LabelCostModel costs;
+
+        private final DistanceOptions options;
+
+        private final int[] mapping;
+
+        // the anchored subtree roots in both trees, ordered by postorder in both trees, and the partner of every
+        // anchored subtree root or -1
+        private int[] anchors1, anchors2, partners1, partners2;
+
+        Diff(Side side1, Side side2, LabelCostModel costs, DistanceOptions options) {
+            this.side1 = side1;
+            this.side2 = side2;
+            this.costs = costs;
+            this.options = options;
+            this.mapping = new int[side1.labels.length];
+            Arrays.fill(this.mapping, -1);
+        }
+
+        int[] run() {
+            int root1 = this.side1.labels.length - 1, root2 = this.side2.labels.length - 1;
+            if (identical(root1, root2)) {
+                mapSubtree(root1, root2);
+                return this.mapping;
+            }
+
+            selectAnchors();
+
+            // align the children of matched nodes top-down, collecting the regions between aligned children
+            List<int[]> regions = new ArrayList<>();
+            Deque<int[]> pairs = new ArrayDeque<>();
+            this.mapping[root1] = root2;
+            pairs.push(new int[]{root1, root2});
+            while (!pairs.isEmpty()) {
+                int[] pair = pairs.pop();
+                alignChildren(pair[0], pair[1], pairs, regions);
+            }
+
+            // regions map disjoint nodes, so they are calculated independently
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int[] region : regions) {
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        mapRegion(region[0], region[1], region[2], region[3]);
+                    }
+                });
+            }
+
+            if (tasks.size() == 1) {
+                tasks.get(0).invoke();
+            } else if (!tasks.isEmpty()) {
+                this.options.getPool().invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            }
+
+            return this.mapping;
+        }
+
+        /**
+         * Returns true if the subtrees rooted at nodes {@code node1} and {@code node2} are identical.
+         */
+        private boolean identical(int node1, int node2) {
+            if (this.side1.hashes[node1] != this.side2.hashes[node2]
+                    || this.side1.size(node1) != this.side2.size(node2))
+                return false;
+
+            int offset1 = this.side1.leftmost(node1), offset2 = this.side2.leftmost(node2);
+            for (int k = 0; k < this.side1.size(node1); k++) {
+                if (this.side1.labels[offset1 + k] != this.side2.labels[offset2 + k]
+                        || this.side1.leftmost(offset1 + k) - offset1 != this.side2.leftmost(offset2 + k) - offset2)
+                    return false;
+            }
+
+            return true;
+        }
+
+        private void mapSubtree(int node1, int node2) {
+            int offset1 = this.side1.leftmost(node1), offset2 = this.side2.leftmost(node2);
+            for (int k = 0; k < this.side1.size(node1); k++)
+                this.mapping[offset1 + k] = offset2 + k;
+        }
+
+        /**
+         * Selects the largest unique identical subtrees of both trees, of which the heaviest subset in the same order
+         * in both trees becomes the anchors.
+         */
+        private void selectAnchors() {
+            int n1 = this.side1.labels.length, n2 = this.side2.labels.length;
+            Map<Long, Integer> unique1 = this.side1.uniqueSubtrees(), unique2 = this.side2.uniqueSubtrees();
+
+            // parents precede their descendants in descending postorder, so only maximal subtrees are selected;
+            // the roots are always matched with each other and are never anchors
+            boolean[] covered = new boolean[n1];
+            List<int[]> candidates = new ArrayList<>();
+            for (int i = n1 - 2; i >= 0; i--) {
+                if (covered[i])
+                    continue;
+
+                Integer j = unique2.get(this.side1.hashes[i]);
+                if (j == null || j == -1 || j == n2 - 1 || unique1.get(this.side1.hashes[i]) != i
+                        || !identical(i, j))
+                    continue;
+
+                Arrays.fill(covered, this.side1.leftmost(i), i + 1, true);
+                candidates.add(new int[]{i, j});
+            }
+
+            // candidates in increasing postorder of the first tree; the heaviest increasing subsequence in the
+            // second tree is found with a tree of prefix maxima over its postorder IDs
+            int count = candidates.size();
+            long[] weights = new long[count], prefixWeights = new long[n2 + 1];
+            int[] previous = new int[count], prefixCandidates = new int[n2 + 1];
+            Arrays.fill(prefixCandidates, -1);
+
+            int best = -1;
+            for (int k = 0; k < count; k++) {
+                int[] candidate = candidates.get(count - 1 - k);
+                long weight = 0;
+                previous[k] = -1;
+                for (int p = candidate[1]; p > 0; p -= p & -p) {
+                    if (prefixWeights[p] > weight) {
+                        weight = prefixWeights[p];
+                        previous[k] = prefixCandidates[p];
+                    }
+                }
+
+                weights[k] = weight + this.side1.size(candidate[0]);
+                for (int p = candidate[1] + 1; p <= n2; p += p & -p) {
+                    if (weights[k] > prefixWeights[p]) {
+                        prefixWeights[p] = weights[k];
+                        prefixCandidates[p] = k;
+                    }
+                }
+
+                if (best == -1 || weights[k] > weights[best])
+                    best = k;
+            }
+
+            int anchors = 0;
+            for (int k = best; k != -1; k = previous[k])
+                anchors++;
+
+            this.anchors1 = new int[anchors];
+            this.anchors2 = new int[anchors];
+            this.partners1 = new int[n1];
+            this.partners2 = new int[n2];
+            Arrays.fill(this.partners1, -1);
+            Arrays.fill(this.partners2, -1);
+            for (int k = best, a = anchors - 1; k != -1; k = previous[k], a--) {
+                int[] candidate = candidates.get(count - 1 - k);
+                this.anchors1[a] = candidate[0];
+                this.anchors2[a] = candidate[1];
+                this.partners1[candidate[0]] = candidate[1];
+                this.partners2[candidate[1]] = candidate[0];
+            }
+        }
+
+        /**
+         * Aligns the children of matched nodes {@code node1} and {@code node2}. Two children are aligned if all anchors
+         * below one of them, whose partners are below the other matched node, have partners below the other one and
+         * vice versa. Aligned anchors are mapped with their whole subtrees, other aligned children are mapped and
+         * aligned further, and the children between aligned ones form regions.
+         */
+        private void alignChildren(int node1, int node2, Deque<int[]> pairs, List<int[]> regions) {
+            int from1 = this.side1.childOffsets[node1], to1 = this.side1.childOffsets[node1 + 1],
+                    from2 = this.side2.childOffsets[node2], to2 = this.side2.childOffsets[node2 + 1];
+
+            int[] targets = targets(this.side1, this.anchors1, this.anchors2, from1, to1, this.side2, node2),
+                    sources = targets(this.side2, this.anchors2, this.anchors1, from2, to2, this.side1, node1);
+
+            int gap1 = from1, gap2 = from2;
+            for (int c = from1; c < to1; c++) {
+                int d = targets[c - from1];
+                if (d < gap2 || sources[d - from2] != c)
+                    continue;
+
+                int child1 = this.side1.children[c], child2 = this.side2.children[d];
+                boolean anchored1 = this.partners1[child1] != -1, anchored2 = this.partners2[child2] != -1;
+                if ((anchored1 || anchored2) && this.partners1[child1] != child2)
+                    continue;
+
+                addRegion(gap1, c, gap2, d, regions);
+                if (anchored1) {
+                    mapSubtree(child1, child2);
+                } else {
+                    this.mapping[child1] = child2;
+                    pairs.push(new int[]{child1, child2});
+                }
+
+                gap1 = c + 1;
+                gap2 = d + 1;
+            }
+
+            addRegion(gap1, to1, gap2, to2, regions);
+        }
+
+        /**
+         * Returns, for every child [{@code from}, {@code to}) in side {@code side}, the index of the child of node
+         * {@code other} in side {@code otherSide} containing the partners of its anchors, -1 if there are none or -2 if
+         * they are below several children.
+         */
+        private static int[] targets(Side side, int[] anchors, int[] partners, int from, int to, Side otherSide,
+                                     int other) {
+            int[] targets = new int[to - from];
+            int low = otherSide.leftmost(other);
+            int otherFrom = otherSide.childOffsets[other], otherTo = otherSide.childOffsets[other + 1];
+
+            for (int c = from; c < to; c++) {
+                int child = side.children[c], target = -1;
+                for (int a = lowerBound(anchors, side.leftmost(child)); a < anchors.length && anchors[a] <= child;
+                     a++) {
+                    int partner = partners[a];
+                    if (partner < low || partner >= other)
+                        continue;
+
+                    // the first child of the other node which is not before the partner contains it
+                    int d = lowerBound(otherSide.children, otherFrom, otherTo, partner);
+                    target = target == -1 || target == d ? d : -2;
+                }
+
+                targets[c - from] = target;
+            }
+
+            return targets;
+        }
+
+        private static int lowerBound(int[] values, int value) {
+            return lowerBound(values, 0, values.length, value);
+        }
+
+        private static int lowerBound(int[] values, int from, int to, int value) {
+            while (from < to) {
+                int middle = (from + to) >>> 1;
+                if (values[middle] < value)
+                    from = middle + 1;
+                else
+                    to = middle;
+            }
+
+            return from;
+        }
+
+        /**
+         * Adds the region of children [{@code from1}, {@code to1}) and [{@code from2}, {@code to2}), given by the
+         * postorder IDs they span, if both are non-empty.
+         */
+        private void addRegion(int from1, int to1, int from2, int to2, List<int[]> regions) {
+            if (from1 >= to1 || from2 >= to2)
+                return;
+
+            regions.add(new int[]{this.side1.leftmost(this.side1.children[from1]), this.side1.children[to1 - 1],
+                    this.side2.leftmost(this.side2.children[from2]), this.side2.children[to2 - 1]});
+        }
+
+        /**
+         * Maps the nodes of consecutive sibling subtrees spanning postorder IDs [{@code low1}, {@code high1}] and
+         * [{@code low2}, {@code high2}] with the exact algorithm, joining the subtrees of both regions under virtual
+         * roots which are matched with each other.
+         */
+        private void mapRegion(int low1, int high1, int low2, int high2) {
+            IndexedTree region1 = region(this.side1, low1, high1), region2 = region(this.side2, low2, high2);
+            int[] local = IndexedTreeDistance.mapping(region1, region2, new VirtualRootCosts(this.costs),
+                    this.options);
+
+            int root2 = region2.getRoot();
+            for (int k = 0; k < region1.getRoot(); k++) {
+                if (local[k] != -1 && local[k] != root2)
+                    this.mapping[low1 + k] = low2 + local[k];
+            }
+        }
+
+        /**
+         * Returns the tree of the region spanning postorder IDs [{@code low}, {@code high}] under a virtual root. The
+         * labels are the postorder IDs of the region nodes, as expected by {@link NodeCostModel}.
+         */
+        private static IndexedTree region(Side side, int low, int high) {
+            int n = high - low + 2;
+            int[] labels = new int[n], lmld = new int[n];
+            for (int k = 0; k < n - 1; k++) {
+                labels[k] = low + k;
+                lmld[k] = side.leftmost(low + k) - low;
+            }
+
+            labels[n - 1] = VIRTUAL_ROOT;
+            return IndexedTree.fromPostorder(labels, lmld, n);
+        }
+    }
+
+    /**
+     * Costs of region trees, in which virtual roots are only matched with each other.
+     */
+    private static final class VirtualRootCosts implements LabelCostModel {
+
+        private final LabelCostModel costs;
+
+        VirtualRootCosts(LabelCostModel costs) {
+            this.costs = costs;
+        }
+
+        @Override
+        public int deleteCost(int label) {
+            return label == VIRTUAL_ROOT ? TreeDistance.HIGH_COST : this.costs.deleteCost(label);
+        }
+
+        @Override
+        public int insertCost(int label) {
+            return label == VIRTUAL_ROOT ? TreeDistance.HIGH_COST : this.costs.insertCost(label);
+        }
+
+        @Override
+        public int renameCost(int from, int to) {
+            if (from == VIRTUAL_ROOT || to == VIRTUAL_ROOT)
+                return from == to ? 0 : TreeDistance.HIGH_COST;
+
+            return this.costs.renameCost(from, to);
+        }
+    }
+}
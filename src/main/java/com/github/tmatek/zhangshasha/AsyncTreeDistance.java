@@ -0,0 +1,234 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Asynchronous tree distance calculations on an {@link Executor}, e.g. a pool of request handlers or, on newer
+ * Java versions, virtual threads. Every calculation returns a {@link CompletableFuture} immediately.
+ * <br><br>
+ * The memory held by distance tables of running calculations is limited: before a calculation starts, its table
+ * memory is predicted by {@link DistanceEstimate} and the calculation waits until enough memory is available.
+ * Waiting calculations are started in the order of submission and do not occupy executor threads. A calculation
+ * predicted to need more than the whole limit is started alone.
+ * <br><br>
+ * Cancelling a returned future cancels its calculation: a waiting calculation is never started and a running one
+ * stops at its next budget check (see {@link DistanceBudget}).
+ */
+public final class AsyncTreeDistance {
+
+    private final Executor executor;
+
+    private final long memoryLimit;
+
+    // guarded by this
+    private final Queue<Job<?>> waiting = new ArrayDeque<>();
+
+    private long usedMemory;
+
+    private int running;
+
+    /**
+     * Creates asynchronous tree distance calculations on executor {@code executor}.
+     *
+     * @param executor    the executor running the calculations
+     * @param memoryLimit the maximal predicted table memory of concurrently running calculations, in bytes
+     * @throws IllegalArgumentException if {@code executor} is {@code null} or {@code memoryLimit} is not positive
+     */
+    public AsyncTreeDistance(Executor executor, long memoryLimit) {
+        if (executor == null)
+            throw new IllegalArgumentException("The executor must not be null");
+
+        if (memoryLimit <= 0)
+            throw new IllegalArgumentException("The memory limit must be positive");
+
+        this.executor = executor;
+        this.memoryLimit = memoryLimit;
+    }
+
+    public long getMemoryLimit() {
+        return this.memoryLimit;
+    }
+
+    /**
+     * Returns the predicted table memory of currently running calculations, in bytes.
+     * @return the memory of running calculations
+     */
+    public synchronized long getUsedMemory() {
+        return this.usedMemory;
+    }
+
+    /**
+     * Returns the number of calculations waiting for memory.
+     * @return the number of waiting calculations
+     */
+    public synchronized int getWaitingCount() {
+        return this.waiting.size();
+    }
+
+    /**
+     * Calculates the tree distance between tree {@code t1} and {@code t2} asynchronously (see
+     * {@link TreeDistance#treeDistanceZhangShasha(TreeNode, TreeNode)}).
+     *
+     * @param t1 the first tree structure
+     * @param t2 the second tree structure
+     * @return the future tree distance between {@code t1} and {@code t2}
+     * @throws IllegalArgumentException if {@code t1} or {@code t2} is {@code null}
+     */
+    public CompletableFuture<Integer> treeDistance(TreeNode t1, TreeNode t2) {
+        if (t1 == null || t2 == null)
+            throw new IllegalArgumentException("Both tree structures must not be null");
+
+        // the future is not derived from another one, so that cancelling it cancels the calculation
+        return submit(DistanceEstimate.of(t1, t2).getPeakTableBytes(), DistanceBudget.unlimited(),
+                b -> TreeDistance.treeDistanceZhangShasha(t1, t2, b).getDistance());
+    }
+
+    /**
+     * Calculates the tree distance between tree {@code t1} and {@code t2} within budget {@code budget}
+     * asynchronously (see {@link TreeDistance#treeDistanceZhangShasha(TreeNode, TreeNode, DistanceBudget)}). The
+     * deadline of the budget includes the time spent waiting for memory.
+     *
+     * @param t1     the first tree structure
+     * @param t2     the second tree structure
+     * @param budget the budget of the calculation
+     * @return the future tree distance between {@code t1} and {@code t2}, or its upper bound
+     * @throws IllegalArgumentException if {@code t1}, {@code t2} or {@code budget} is {@code null}
+     */
+    public CompletableFuture<DistanceResult> treeDistance(TreeNode t1, TreeNode t2, DistanceBudget budget) {
+        if (t1 == null || t2 == null || budget == null)
+            throw new IllegalArgumentException("Both tree structures and the budget must not be null");
+
+        return submit(DistanceEstimate.of(t1, t2).getPeakTableBytes(), budget,
+                b -> TreeDistance.treeDistanceZhangShasha(t1, t2, b));
+    }
+
+    /**
+     * Calculates the list of tree transformations required to transform tree {@code t1} to {@code t2}
+     * asynchronously (see {@link TreeDistance#treeDistanceZhangShasha(EditableTreeNode, EditableTreeNode)}).
+     *
+     * @param t1 the first tree structure
+     * @param t2 the second tree structure
+     * @return the future list of tree transformations
+     * @throws IllegalArgumentException if {@code t1} or {@code t2} is {@code null}
+     */
+    public CompletableFuture<List<TreeTransformation>> treeDistance(EditableTreeNode t1, EditableTreeNode t2) {
+        if (t1 == null || t2 == null)
+            throw new IllegalArgumentException("Both tree structures must not be null");
+
+        return submit(DistanceEstimate.of(t1, t2).getEditScriptTableBytes(), DistanceBudget.unlimited(),
+                b -> TreeDistance.budgetedEditScript(t1, t2, b));
+    }
+
+    /**
+     * Calculates the tree distance between indexed trees {@code t1} and {@code t2} asynchronously (see
+     * {@link IndexedTreeDistance#treeDistance(IndexedTree, IndexedTree, LabelCostModel)}).
+     *
+     * @param t1    the first tree structure
+     * @param t2    the second tree structure
+     * @param costs the transformation costs for node labels
+     * @return the future tree distance between {@code t1} and {@code t2}
+     * @throws IllegalArgumentException if {@code t1}, {@code t2} or {@code costs} is {@code null}
+     */
+    public CompletableFuture<Integer> treeDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs) {
+        if (t1 == null || t2 == null || costs == null)
+            throw new IllegalArgumentException("Both tree structures and the cost model must not be null");
+
+        return submit(DistanceEstimate.of(t1, t2).getPeakTableBytes(), DistanceBudget.unlimited(),
+                b -> IndexedTreeDistance.exactTreeDistance(t1, t2, costs, b, null));
+    }
+
+    private <T> CompletableFuture<T> submit(long memory, DistanceBudget budget, Function<DistanceBudget, T> work) {
+        Job<T> job = new Job<>(Math.min(memory, this.memoryLimit), budget, work);
+
+        // the calculation is cancelled together with its future and no longer holds back waiting calculations
+        job.future.whenComplete((result, e) -> {
+            if (job.future.isCancelled()) {
+                budget.cancel();
+                startWaiting();
+            }
+        });
+
+        synchronized (this) {
+            this.waiting.add(job);
+        }
+
+        startWaiting();
+        return job.future;
+    }
+
+    /**
+     * Starts waiting calculations in the order of submission while there is enough memory available.
+     */
+    private void startWaiting() {
+        while (true) {
+            Job<?> job;
+            synchronized (this) {
+                // cancelled calculations are dropped before the memory of the next one is checked
+                while (!this.waiting.isEmpty() && this.waiting.peek().future.isDone())
+                    this.waiting.poll();
+
+                job = this.waiting.peek();
+                if (job == null || (this.running > 0 && this.usedMemory + job.memory > this.memoryLimit))
+                    return;
+
+                this.waiting.poll();
+
+                this.usedMemory += job.memory;
+                this.running++;
+            }
+
+            try {
+                this.executor.execute(job);
+            } catch (RuntimeException e) {
+                job.future.completeExceptionally(e);
+                finished(job);
+            }
+        }
+    }
+
+    private void finished(Job<?> job) {
+        synchronized (this) {
+            this.usedMemory -= job.memory;
+            this.running--;
+        }
+
+        startWaiting();
+    }
+
+    /**
+     * A calculation with its predicted memory.
+     */
+    private final class Job<T> implements Runnable {
+
+        private final long memory;
+
+        private final DistanceBudget budget;
+
+        private final Function<DistanceBudget, T> work;
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Job(long memory, DistanceBudget budget, Function<DistanceBudget, T> work) {
+            this.memory = memory;
+            this.budget = budget;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!this.future.isDone())
+                    this.future.complete(this.work.apply(this.budget));
+            } catch (Throwable e) {
+                this.future.completeExceptionally(e);
+            } finally {
+                finished(this);
+            }
+        }
+    }
+}
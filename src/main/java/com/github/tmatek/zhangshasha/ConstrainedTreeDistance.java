@@ -0,0 +1,390 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Utility class for calculating the constrained tree distance between two tree structures. The constrained tree
+ * distance only permits mappings in which disjoint subtrees of one tree are mapped to disjoint subtrees of the other
+ * tree. It is never smaller than the tree distance calculated by {@link TreeDistance}, but it is calculated in
+ * O(|T1| * |T2|) time, so it can be used as a fast approximation for large trees.
+ * <br><br>
+ * The transformation costs and the resulting list of {@link TreeTransformation}s follow the same contract as in
+ * {@link TreeDistance}; as there, the root of the first tree is never deleted.
+ * <br><br>
+ * For further information see paper by K. Zhang:
+ * <a href="https://doi.org/10.1016/0031-3203(95)00029-1">A constrained edit distance between unordered labeled
+ * trees</a>; the ordered variant replaces the bipartite matching of children with a sequence alignment.
+ */
+public final class ConstrainedTreeDistance {
+
+    private ConstrainedTreeDistance() {
+    }
+
+    /**
+     * Calculates the constrained tree distance between tree {@code t1} and {@code t2}, taking into account that
+     * both trees are ordered i.e. the order of siblings is important.
+     *
+     * @param t1 the first tree structure
+     * @param t2 the second tree structure
+     * @return the constrained tree distance between {@code t1} and {@code t2}
+     * @throws IllegalArgumentException if {@code t1} or {@code t2} is {@code null}
+     */
+    public static int treeDistance(TreeNode t1, TreeNode t2) {
+        if (t1 == null || t2 == null)
+            throw new IllegalArgumentException("Both tree structures must not be null");
+
+        NodeIndex first = NodeIndex.of(t1), second = NodeIndex.of(t2);
+        return new Computation(first.tree(), second.tree(), new NodeCostModel(first, second), false, null).run();
+    }
+
+    /**
+     * Calculates the constrained tree distance between tree {@code t1} and {@code t2} and returns a list of tree
+     * transformations required to transform tree {@code t1} to {@code t2}. The sum of costs of all transformations
+     * is the constrained tree distance. The transformations can be applied using
+     * {@link TreeDistance#transformTree(EditableTreeNode, List)}.
+     *
+     * @param t1 the first tree structure
+     * @param t2 the second tree structure
+     * @return a list of tree transformations required to transform first tree into the second
+     * @throws IllegalArgumentException if {@code t1} or {@code t2} is {@code null}
+     */
+    public static List<TreeTransformation> treeDistance(EditableTreeNode t1, EditableTreeNode t2) {
+        if (t1 == null || t2 == null)
+            throw new IllegalArgumentException("Both tree structures must not be null");
+
+        NodeIndex first = NodeIndex.of(t1), second = NodeIndex.of(t2);
+        NodeCostModel costs = new NodeCostModel(first, second);
+
+        Computation computation = new Computation(first.tree(), second.tree(), costs, true, null);
+        computation.run();
+        return EditScripts.fromMapping(first, second, computation.mapping(), costs);
+    }
+
+    /**
+     * Calculates the constrained tree distance between indexed trees {@code t1} and {@code t2}.
+     *
+     * @param t1    the first tree structure
+     * @param t2    the second tree structure
+     * @param costs the transformation costs for node labels
+     * @return the constrained tree distance between {@code t1} and {@code t2}
+     * @throws IllegalArgumentException if {@code t1}, {@code t2} or {@code costs} is {@code null}
+     */
+    public static int treeDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs) {
+        if (t1 == null || t2 == null || costs == null)
+            throw new IllegalArgumentException("Both tree structures and the cost model must not be null");
+
+        return new Computation(t1, t2, costs, false, null).run();
+    }
+
+    /**
+     * A single computation of the constrained tree distance. For every node {@code i} of the first tree it keeps two
+     * rows over all nodes {@code j} of the second tree: the distance between subtrees rooted at {@code i} and
+     * {@code j} and the distance between the forests of their children. Unless the mapping is required, the rows of
+     * a node are recycled as soon as its parent has been processed. Every row is charged to the budget of the
+     * computation, if any.
+     */
+    static final class Computation {
+
+        private static final int TREE = 0, FOREST = 1;
+
+        private final IndexedTree t1, t2;
+
+        private final LabelCostModel costs;
+
+        private final boolean keepTables;
+
+        private final DistanceBudget budget;
+
+        // children of every node, in left-to-right order
+        private final int[] childStart1, children1, childStart2, children2;
+
+        // the costs of deleting/inserting whole subtrees and forests of children
+        private final int[] deleteTree, deleteForest, insertTree, insertForest;
+
+        private final int[][] treeRows, forestRows;
+
+        private final Deque<int[]> pool = new ArrayDeque<>();
+
+        private int[] alignment;
+
+        Computation(IndexedTree t1, IndexedTree t2, LabelCostModel costs, boolean keepTables,
+                    DistanceBudget budget) {
+            this.t1 = t1;
+            this.t2 = t2;
+            this.costs = costs;
+            this.keepTables = keepTables;
+            this.budget = budget;
+
+            int n1 = t1.size(), n2 = t2.size();
+            this.childStart1 = new int[n1 + 1];
+            this.children1 = new int[n1];
+            this.childStart2 = new int[n2 + 1];
+            this.children2 = new int[n2];
+            indexChildren(t1, this.childStart1, this.children1);
+            indexChildren(t2, this.childStart2, this.children2);
+
+            this.deleteTree = new int[n1];
+            this.deleteForest = new int[n1];
+            for (int i = 0; i < n1; i++) {
+                for (int c = this.childStart1[i]; c < this.childStart1[i + 1]; c++)
+                    this.deleteForest[i] += this.deleteTree[this.children1[c]];
+
+                // prevent removing the root node
+                int delete = i == t1.getRoot() ? TreeDistance.HIGH_COST : costs.deleteCost(t1.getLabel(i));
+                this.deleteTree[i] = this.deleteForest[i] + delete;
+            }
+
+            int maxDegree = 0;
+            this.insertTree = new int[n2];
+            this.insertForest = new int[n2];
+            for (int j = 0; j < n2; j++) {
+                for (int c = this.childStart2[j]; c < this.childStart2[j + 1]; c++)
+                    this.insertForest[j] += this.insertTree[this.children2[c]];
+
+                this.insertTree[j] = this.insertForest[j] + costs.insertCost(t2.getLabel(j));
+                maxDegree = Math.max(maxDegree, this.childStart2[j + 1] - this.childStart2[j]);
+            }
+
+            this.treeRows = new int[n1][];
+            this.forestRows = new int[n1][];
+            this.alignment = new int[maxDegree + 1];
+        }
+
+        private static void indexChildren(IndexedTree tree, int[] childStart, int[] children) {
+            int n = tree.size();
+            for (int i = 0; i < n; i++) {
+                if (tree.getParent(i) != -1)
+                    childStart[tree.getParent(i) + 1]++;
+            }
+
+            for (int i = 0; i < n; i++)
+                childStart[i + 1] += childStart[i];
+
+            int[] next = Arrays.copyOf(childStart, n);
+            for (int i = 0; i < n; i++) {
+                if (tree.getParent(i) != -1)
+                    children[next[tree.getParent(i)]++] = i;
+            }
+        }
+
+        private int[] allocateRow() {
+            int[] row = this.pool.poll();
+            return row == null ? new int[this.t2.size()] : row;
+        }
+
+        /**
+         * Calculates the constrained distance between all pairs of subtrees and returns the distance between the
+         * whole trees.
+         */
+        int run() {
+            int n1 = this.t1.size(), n2 = this.t2.size();
+
+            for (int i = 0; i < n1; i++) {
+                if (this.budget != null)
+                    this.budget.charge(n2);
+
+                int[] tree = allocateRow(), forest = allocateRow();
+
+                for (int j = 0; j < n2; j++) {
+                    forest[j] = forestDistance(i, j, forest);
+                    tree[j] = treeDistance(i, j, tree, forest);
+                }
+
+                this.treeRows[i] = tree;
+                this.forestRows[i] = forest;
+
+                if (!this.keepTables) {
+                    // rows of children are not needed once their parent has been processed
+                    for (int c = this.childStart1[i]; c < this.childStart1[i + 1]; c++) {
+                        int child = this.children1[c];
+                        this.pool.push(this.treeRows[child]);
+                        this.pool.push(this.forestRows[child]);
+                        this.treeRows[child] = null;
+                        this.forestRows[child] = null;
+                    }
+                }
+            }
+
+            return this.treeRows[n1 - 1][n2 - 1];
+        }
+
+        private int treeDistance(int i, int j, int[] tree, int[] forest) {
+            // map i to j
+            int min = forest[j] + this.costs.renameCost(this.t1.getLabel(i), this.t2.getLabel(j));
+
+            // insert j, mapping the subtree of i into the subtree of one of its children
+            for (int c = this.childStart2[j]; c < this.childStart2[j + 1]; c++) {
+                int child = this.children2[c];
+                min = Math.min(min, this.insertTree[j] - this.insertTree[child] + tree[child]);
+            }
+
+            // delete i, mapping the subtree of one of its children into the subtree of j
+            for (int c = this.childStart1[i]; c < this.childStart1[i + 1]; c++) {
+                int child = this.children1[c];
+                min = Math.min(min, this.deleteTree[i] - this.deleteTree[child] + this.treeRows[child][j]);
+            }
+
+            return min;
+        }
+
+        private int forestDistance(int i, int j, int[] forest) {
+            // align the children of i with the children of j
+            int min = alignChildren(i, j);
+
+            // map the forest of i into the forest of one of the children of j
+            for (int c = this.childStart2[j]; c < this.childStart2[j + 1]; c++) {
+                int child = this.children2[c];
+                min = Math.min(min, this.insertForest[j] - this.insertForest[child] + forest[child]);
+            }
+
+            // map the forest of one of the children of i into the forest of j
+            for (int c = this.childStart1[i]; c < this.childStart1[i + 1]; c++) {
+                int child = this.children1[c];
+                min = Math.min(min, this.deleteForest[i] - this.deleteForest[child] + this.forestRows[child][j]);
+            }
+
+            return min;
+        }
+
+        /**
+         * Calculates the sequence edit distance between the children of {@code i} and {@code j}, where substituting
+         * a child by another child costs the distance between their subtrees.
+         */
+        private int alignChildren(int i, int j) {
+            int from2 = this.childStart2[j], to2 = this.childStart2[j + 1];
+            int[] row = this.alignment;
+
+            row[0] = 0;
+            for (int b = from2; b < to2; b++)
+                row[b - from2 + 1] = row[b - from2] + this.insertTree[this.children2[b]];
+
+            for (int a = this.childStart1[i]; a < this.childStart1[i + 1]; a++) {
+                int child1 = this.children1[a];
+                int[] subtrees = this.treeRows[child1];
+
+                int diagonal = row[0];
+                row[0] += this.deleteTree[child1];
+
+                for (int b = from2; b < to2; b++) {
+                    int child2 = this.children2[b], k = b - from2 + 1;
+                    int value = Math.min(row[k] + this.deleteTree[child1],
+                            Math.min(row[k - 1] + this.insertTree[child2], diagonal + subtrees[child2]));
+
+                    diagonal = row[k];
+                    row[k] = value;
+                }
+            }
+
+            return row[to2 - from2];
+        }
+
+        /**
+         * Recovers the mapping which realizes the constrained tree distance. Requires the tables to be kept.
+         *
+         * @return the postorder ID of the mapped node of the second tree for every node of the first tree, or -1
+         */
+        int[] mapping() {
+            int[] mapping = new int[this.t1.size()];
+            Arrays.fill(mapping, -1);
+
+            Deque<int[]> tasks = new ArrayDeque<>();
+            tasks.push(new int[]{TREE, this.t1.getRoot(), this.t2.getRoot()});
+
+            while (!tasks.isEmpty()) {
+                int[] task = tasks.pop();
+                if (task[0] == TREE)
+                    mapTrees(task[1], task[2], mapping, tasks);
+                else
+                    mapForests(task[1], task[2], tasks);
+            }
+
+            return mapping;
+        }
+
+        private void mapTrees(int i, int j, int[] mapping, Deque<int[]> tasks) {
+            int value = this.treeRows[i][j];
+
+            if (value == this.forestRows[i][j] + this.costs.renameCost(this.t1.getLabel(i), this.t2.getLabel(j))) {
+                mapping[i] = j;
+                tasks.push(new int[]{FOREST, i, j});
+                return;
+            }
+
+            for (int c = this.childStart2[j]; c < this.childStart2[j + 1]; c++) {
+                int child = this.children2[c];
+                if (value == this.insertTree[j] - this.insertTree[child] + this.treeRows[i][child]) {
+                    tasks.push(new int[]{TREE, i, child});
+                    return;
+                }
+            }
+
+            for (int c = this.childStart1[i]; c < this.childStart1[i + 1]; c++) {
+                int child = this.children1[c];
+                if (value == this.deleteTree[i] - this.deleteTree[child] + this.treeRows[child][j]) {
+                    tasks.push(new int[]{TREE, child, j});
+                    return;
+                }
+            }
+        }
+
+        private void mapForests(int i, int j, Deque<int[]> tasks) {
+            int value = this.forestRows[i][j];
+            int from1 = this.childStart1[i], to1 = this.childStart1[i + 1],
+                    from2 = this.childStart2[j], to2 = this.childStart2[j + 1];
+
+            // recompute the full alignment table of children
+            int p = to1 - from1, q = to2 - from2;
+            int[][] table = new int[p + 1][q + 1];
+            for (int b = 1; b <= q; b++)
+                table[0][b] = table[0][b - 1] + this.insertTree[this.children2[from2 + b - 1]];
+
+            for (int a = 1; a <= p; a++) {
+                int child1 = this.children1[from1 + a - 1];
+                table[a][0] = table[a - 1][0] + this.deleteTree[child1];
+
+                for (int b = 1; b <= q; b++) {
+                    int child2 = this.children2[from2 + b - 1];
+                    table[a][b] = Math.min(table[a - 1][b] + this.deleteTree[child1],
+                            Math.min(table[a][b - 1] + this.insertTree[child2],
+                                    table[a - 1][b - 1] + this.treeRows[child1][child2]));
+                }
+            }
+
+            if (table[p][q] == value) {
+                int a = p, b = q;
+                while (a > 0 && b > 0) {
+                    int child1 = this.children1[from1 + a - 1], child2 = this.children2[from2 + b - 1];
+                    if (table[a][b] == table[a - 1][b - 1] + this.treeRows[child1][child2]) {
+                        tasks.push(new int[]{TREE, child1, child2});
+                        a--;
+                        b--;
+                    } else if (table[a][b] == table[a - 1][b] + this.deleteTree[child1])
+                        a--;
+                    else
+                        b--;
+                }
+
+                return;
+            }
+
+            for (int c = from2; c < to2; c++) {
+                int child = this.children2[c];
+                if (value == this.insertForest[j] - this.insertForest[child] + this.forestRows[i][child]) {
+                    tasks.push(new int[]{FOREST, i, child});
+                    return;
+                }
+            }
+
+            for (int c = from1; c < to1; c++) {
+                int child = this.children1[c];
+                if (value == this.deleteForest[i] - this.deleteForest[child] + this.forestRows[child][j]) {
+                    tasks.push(new int[]{FOREST, child, j});
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * The path decomposition used by the Zhang-Shasha algorithm. Both decompositions give the same tree distance, but
+ * the number of calculated distance table cells depends on the shapes of the trees (see {@link DistancePlan}).
+ */
+public enum Decomposition {
+
+    /**
+     * Subproblems are forests obtained by removing leftmost roots; keyroots are nodes with a left sibling. Efficient
+     * for trees whose subtrees grow towards the left.
+     */
+    LEFT,
+
+    /**
+     * Subproblems are forests obtained by removing rightmost roots; keyroots are nodes with a right sibling. This is
+     * the left decomposition of mirrored trees and is efficient for trees whose subtrees grow towards the right.
+     */
+    RIGHT
+}
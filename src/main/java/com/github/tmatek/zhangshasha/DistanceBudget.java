@@ -0,0 +1,155 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit on the work spent by a single tree distance calculation, given as a deadline, a maximal number of
+ * calculated distance table cells or both. The calculation checks its budget cooperatively; once the budget is
+ * exhausted, the calculation stops and returns the best upper bound found so far (see {@link DistanceResult}).
+ * <br><br>
+ * A budget also allows the calculation to be cancelled from another thread, either by {@link #cancel()} or by
+ * interrupting the calculating thread. A cancelled calculation throws {@link CancellationException}. Calculations
+ * without a budget are never cancelled, even if the calculating thread is interrupted.
+ * <br><br>
+ * The deadline is measured from the creation of the budget; a budget should be used for a single calculation.
+ */
+public final class DistanceBudget {
+
+    private final long deadline;
+
+    private final boolean hasDeadline;
+
+    private final long maxCells;
+
+    private final boolean interruptible;
+
+    private long cells;
+
+    private volatile boolean cancelled;
+
+    private DistanceBudget(long maxCells, long timeoutNanos, boolean hasDeadline) {
+        this(maxCells, timeoutNanos, hasDeadline, true);
+    }
+
+    private DistanceBudget(long maxCells, long timeoutNanos, boolean hasDeadline, boolean interruptible) {
+        this.maxCells = maxCells;
+        this.interruptible = interruptible;
+        this.hasDeadline = hasDeadline;
+        this.deadline = hasDeadline ? System.nanoTime() + timeoutNanos : 0;
+    }
+
+    /**
+     * Returns a budget without any limits, which can only be cancelled.
+     * @return an unlimited budget
+     */
+    public static DistanceBudget unlimited() {
+        return new DistanceBudget(Long.MAX_VALUE, 0, false);
+    }
+
+    /**
+     * Returns a budget without any limits which ignores interrupts, used by calculations without a budget.
+     */
+    static DistanceBudget uninterruptible() {
+        return new DistanceBudget(Long.MAX_VALUE, 0, false, false);
+    }
+
+    /**
+     * Returns a budget which is exhausted after {@code timeout} has elapsed.
+     * @param timeout the maximal duration of the calculation
+     * @param unit the time unit of {@code timeout}
+     * @return a budget limited by a deadline
+     */
+    public static DistanceBudget withDeadline(long timeout, TimeUnit unit) {
+        return new DistanceBudget(Long.MAX_VALUE, unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Returns a budget which is exhausted after {@code maxCells} distance table cells have been calculated.
+     * @param maxCells the maximal number of calculated cells
+     * @return a budget limited by the number of cells
+     */
+    public static DistanceBudget withMaxCells(long maxCells) {
+        return new DistanceBudget(maxCells, 0, false);
+    }
+
+    /**
+     * Returns a budget which is exhausted either after {@code timeout} has elapsed or after {@code maxCells}
+     * distance table cells have been calculated, whichever comes first.
+     * @param maxCells the maximal number of calculated cells
+     * @param timeout the maximal duration of the calculation
+     * @param unit the time unit of {@code timeout}
+     * @return a budget limited by a deadline and the number of cells
+     */
+    public static DistanceBudget of(long maxCells, long timeout, TimeUnit unit) {
+        return new DistanceBudget(maxCells, unit.toNanos(timeout), true);
+    }
+
+    /**
+     * Returns true if this budget has no limits.
+     * @return true if this budget has no limits
+     */
+    public boolean isUnlimited() {
+        return !this.hasDeadline && this.maxCells == Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of cells calculated so far.
+     * @return the number of cells calculated so far
+     */
+    public long getUsedCells() {
+        return this.cells;
+    }
+
+    /**
+     * Requests the cancellation of the calculation using this budget.
+     */
+    public void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * Returns true if the calculation using this budget has been cancelled.
+     * @return true if the calculation has been cancelled
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns true if a calculation of {@code count} cells is certain to finish within this budget, which is only
+     * possible if the budget has no deadline.
+     */
+    boolean fits(long count) {
+        return !this.hasDeadline && this.maxCells - this.cells >= count;
+    }
+
+    /**
+     * Records the calculation of {@code count} cells and checks the budget.
+     *
+     * @param count the number of calculated cells
+     * @throws BudgetExceededException if the budget has been exhausted
+     * @throws CancellationException if the calculation has been cancelled or, unless the budget ignores interrupts,
+     *                               the calculating thread has been interrupted
+     */
+    void charge(long count) {
+        if (this.cancelled || (this.interruptible && Thread.currentThread().isInterrupted()))
+            throw new CancellationException("The tree distance calculation has been cancelled");
+
+        this.cells += count;
+        if (this.cells > this.maxCells || (this.hasDeadline && System.nanoTime() - this.deadline > 0))
+            throw new BudgetExceededException();
+    }
+
+    /**
+     * Thrown when a calculation exhausts its budget. Used internally to unwind the calculation.
+     */
+    static final class BudgetExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException() {
+            super("The tree distance budget has been exhausted", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * A prediction of the work and memory needed to calculate the tree distance between two trees, obtained without
+ * running the calculation. The prediction is based on the keyroots and leftmost leaf descendants of both trees:
+ * the forest distance table of a pair of keyroots has one cell for every pair of nodes of their subtrees, so the
+ * total number of cells is the product of the summed keyroot subtree sizes of both trees. The cells are predicted
+ * for the cheaper {@link Decomposition}, which is chosen by default (see {@link DistancePlan}).
+ * <br><br>
+ * The estimate can be used to route, queue or reject calculations before they are started.
+ */
+public final class DistanceEstimate {
+
+    // size of an object reference and of a retained ForestTrail object on a typical 64-bit JVM
+    private static final int REFERENCE_BYTES = 8, TRAIL_BYTES = 40;
+
+    private final int size1, size2;
+
+    private final long cells;
+
+    private DistanceEstimate(int size1, int size2, long cells) {
+        this.size1 = size1;
+        this.size2 = size2;
+        this.cells = cells;
+    }
+
+    /**
+     * Estimates the calculation of the tree distance between indexed trees {@code t1} and {@code t2}.
+     *
+     * @param t1 the first tree structure
+     * @param t2 the second tree structure
+     * @return the estimate of the calculation
+     */
+    public static DistanceEstimate of(IndexedTree t1, IndexedTree t2) {
+        long left = keyrootWork(t1, Decomposition.LEFT) * keyrootWork(t2, Decomposition.LEFT),
+                right = keyrootWork(t1, Decomposition.RIGHT) * keyrootWork(t2, Decomposition.RIGHT);
+
+        return new DistanceEstimate(t1.size(), t2.size(), Math.min(left, right));
+    }
+
+    /**
+     * Estimates the calculation of the tree distance between tree {@code t1} and {@code t2}. The trees are traversed
+     * once, which is negligible compared to the calculation itself.
+     *
+     * @param t1 the first tree structure
+     * @param t2 the second tree structure
+     * @return the estimate of the calculation
+     */
+    public static DistanceEstimate of(TreeNode t1, TreeNode t2) {
+        return of(IndexedTree.of(t1, node -> 0), IndexedTree.of(t2, node -> 0));
+    }
+
+    /**
+     * Returns the sum of subtree sizes of all keyroots of {@code tree} with decomposition {@code decomposition}.
+     */
+    static long keyrootWork(IndexedTree tree, Decomposition decomposition) {
+        long work = 0;
+        if (decomposition == Decomposition.LEFT) {
+            for (int i = 0; i < tree.getKeyrootCount(); i++) {
+                int keyroot = tree.getKeyroot(i);
+                work += keyroot - tree.getLeftmostLeaf(keyroot) + 1;
+            }
+        } else {
+            // right keyroots are the root and nodes with a right sibling, i.e. nodes not directly preceding their
+            // parent in postorder
+            for (int j = 0; j < tree.size(); j++) {
+                if (tree.getParent(j) != j + 1)
+                    work += j - tree.getLeftmostLeaf(j) + 1;
+            }
+        }
+
+        return work;
+    }
+
+    /**
+     * Returns the exact number of forest distance table cells calculated by the Zhang-Shasha algorithm with the
+     * cheaper decomposition.
+     * @return the number of calculated cells
+     */
+    public long getCells() {
+        return this.cells;
+    }
+
+    /**
+     * Returns the size of the table holding the distances between all pairs of subtrees, in bytes.
+     * @return the size of the tree distance table
+     */
+    public long getTreeTableBytes() {
+        return 4L * this.size1 * this.size2;
+    }
+
+    /**
+     * Returns the size of the largest forest distance table, in bytes.
+     * @return the size of the largest forest distance table
+     */
+    public long getForestTableBytes() {
+        return 4L * (this.size1 + 1) * (this.size2 + 1);
+    }
+
+    /**
+     * Returns the predicted peak memory of the distance tables when only the tree distance is calculated, as by
+     * {@link TreeDistance#treeDistanceZhangShasha(TreeNode, TreeNode)} or {@link IndexedTreeDistance}, in bytes.
+     * @return the predicted peak memory of the distance tables
+     */
+    public long getPeakTableBytes() {
+        return getTreeTableBytes() + getForestTableBytes();
+    }
+
+    /**
+     * Returns the approximate peak memory of the distance tables when a list of transformations is calculated, as
+     * by {@link TreeDistance#treeDistanceZhangShasha(EditableTreeNode, EditableTreeNode)}, in bytes. The tables of
+     * that calculation hold backtracking objects instead of integers, so the value depends on the JVM and is only
+     * approximate.
+     * @return the approximate peak memory of the backtracking tables
+     */
+    public long getEditScriptTableBytes() {
+        long treeCells = (long) (this.size1 + 1) * (this.size2 + 1);
+        return treeCells * REFERENCE_BYTES + (long) this.size1 * this.size2 * TRAIL_BYTES
+                + treeCells * (REFERENCE_BYTES + TRAIL_BYTES);
+    }
+
+    @Override
+    public String toString() {
+        return this.size1 + "x" + this.size2 + " nodes, " + this.cells + " cells, " + getPeakTableBytes()
+                + " table bytes";
+    }
+}
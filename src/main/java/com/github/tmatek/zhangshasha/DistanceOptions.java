@@ -0,0 +1,155 @@
+package com.github.tmatek.zhangshasha;
+
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tuning options of the tree distance calculation on indexed trees. The options only affect how the distance is
+ * calculated, never its result.
+ * <br><br>
+ * Forest distance tables with at least {@link #getParallelThreshold()} cells are calculated in parallel: the table is
+ * split into square tiles of {@link #getTileSize()} cells per side and the tiles on every anti-diagonal are
+ * calculated concurrently on {@link #getPool()}, as each tile only depends on tiles above and to the left of it.
+ * In that case the transformation costs may be requested from several threads at once.
+ * <br><br>
+ * Distance tables with at least {@link #getOffHeapThreshold()} cells are not held on the heap, but in memory-mapped
+ * temporary files in {@link #getSpillDirectory()}, which are removed when the calculation completes. This allows
+ * comparing trees whose tables would not fit on the heap, at the cost of slower access to the tables.
+ * <br><br>
+ * Options may hold a {@link SubtreeDistanceCache} shared by several calculations. The {@link Decomposition} is chosen
+ * automatically for every pair of trees (see {@link DistancePlan}), unless it is set.
+ */
+public final class DistanceOptions {
+
+    /**
+     * The default number of cells of a forest distance table above which the table is calculated in parallel.
+     */
+    public static final long DEFAULT_PARALLEL_THRESHOLD = 1L << 22;
+
+    /**
+     * The default number of cells per side of a tile of a table calculated in parallel.
+     */
+    public static final int DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * The default number of cells of a distance table above which the table is held off the heap.
+     */
+    public static final long DEFAULT_OFF_HEAP_THRESHOLD = 1L << 28;
+
+    private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    private int tileSize = DEFAULT_TILE_SIZE;
+
+    private ForkJoinPool pool;
+
+    private long offHeapThreshold = DEFAULT_OFF_HEAP_THRESHOLD;
+
+    private Path spillDirectory;
+
+    private SubtreeDistanceCache cache;
+
+    private Decomposition decomposition;
+
+    public long getParallelThreshold() {
+        return this.parallelThreshold;
+    }
+
+    /**
+     * Sets the number of cells of a forest distance table above which the table is calculated in parallel. Use
+     * {@link Long#MAX_VALUE} to always calculate sequentially.
+     * @param parallelThreshold the minimal number of cells of a table calculated in parallel
+     */
+    public void setParallelThreshold(long parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getTileSize() {
+        return this.tileSize;
+    }
+
+    /**
+     * Sets the number of cells per side of a tile of a table calculated in parallel.
+     * @param tileSize the size of a tile
+     * @throws IllegalArgumentException if {@code tileSize} is not positive
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0)
+            throw new IllegalArgumentException("The tile size must be positive");
+
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * Returns the pool used for parallel calculation, which is {@link ForkJoinPool#commonPool()} unless set.
+     * @return the pool used for parallel calculation
+     */
+    public ForkJoinPool getPool() {
+        return this.pool == null ? ForkJoinPool.commonPool() : this.pool;
+    }
+
+    /**
+     * Sets the pool used for parallel calculation.
+     * @param pool the pool used for parallel calculation or {@code null} for the common pool
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public long getOffHeapThreshold() {
+        return this.offHeapThreshold;
+    }
+
+    /**
+     * Sets the number of cells of a distance table above which the table is held off the heap. Use
+     * {@link Long#MAX_VALUE} to always hold tables on the heap.
+     * @param offHeapThreshold the minimal number of cells of a table held off the heap
+     */
+    public void setOffHeapThreshold(long offHeapThreshold) {
+        this.offHeapThreshold = offHeapThreshold;
+    }
+
+    /**
+     * Returns the directory of temporary files holding tables off the heap or {@code null} for the default
+     * temporary-file directory.
+     * @return the directory of temporary files or {@code null}
+     */
+    public Path getSpillDirectory() {
+        return this.spillDirectory;
+    }
+
+    /**
+     * Sets the directory of temporary files holding tables off the heap.
+     * @param spillDirectory the directory of temporary files or {@code null} for the default temporary-file directory
+     */
+    public void setSpillDirectory(Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public SubtreeDistanceCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Sets the cache of distances between pairs of subtrees, consulted for every pair of keyroots.
+     * @param cache the cache of subtree distances or {@code null} for no caching
+     */
+    public void setCache(SubtreeDistanceCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns the decomposition used by calculations or {@code null} if it is chosen automatically.
+     * @return the decomposition or {@code null}
+     */
+    public Decomposition getDecomposition() {
+        return this.decomposition;
+    }
+
+    /**
+     * Sets the decomposition used by calculations.
+     * @param decomposition the decomposition or {@code null} to choose it automatically
+     */
+    public void setDecomposition(Decomposition decomposition) {
+        this.decomposition = decomposition;
+    }
+}
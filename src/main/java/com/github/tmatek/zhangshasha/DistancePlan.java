@@ -0,0 +1,116 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The plan of a tree distance calculation on {@link IndexedTree}s: the {@link Decomposition} used and whether the
+ * distance tables are calculated in parallel or held off the heap. The planner predicts the number of calculated
+ * cells of both decompositions from the keyroots of both trees and chooses the cheaper one, unless a decomposition
+ * is set by {@link DistanceOptions#setDecomposition(Decomposition)}.
+ * <br><br>
+ * Plans used by calculations are logged to logger {@code com.github.tmatek.zhangshasha.DistancePlan} at level
+ * {@link Level#FINE}.
+ */
+public final class DistancePlan {
+
+    private static final Logger LOGGER = Logger.getLogger(DistancePlan.class.getName());
+
+    private final Decomposition decomposition;
+
+    private final long leftCells, rightCells;
+
+    private final boolean parallel, offHeap;
+
+    private DistancePlan(Decomposition decomposition, long leftCells, long rightCells, boolean parallel,
+                         boolean offHeap) {
+        this.decomposition = decomposition;
+        this.leftCells = leftCells;
+        this.rightCells = rightCells;
+        this.parallel = parallel;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Plans the calculation of the tree distance between indexed trees {@code t1} and {@code t2}.
+     *
+     * @param t1      the first tree structure
+     * @param t2      the second tree structure
+     * @param options the options of the calculation
+     * @return the plan of the calculation
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     */
+    public static DistancePlan of(IndexedTree t1, IndexedTree t2, DistanceOptions options) {
+        if (t1 == null || t2 == null || options == null)
+            throw new IllegalArgumentException("Both tree structures and the options must not be null");
+
+        return of(t1.size(), DistanceEstimate.keyrootWork(t1, Decomposition.LEFT),
+                DistanceEstimate.keyrootWork(t1, Decomposition.RIGHT), t2, options);
+    }
+
+    /**
+     * Plans the calculation for a first tree of {@code size1} nodes whose keyroot work of both decompositions is
+     * already known.
+     */
+    static DistancePlan of(int size1, long leftWork1, long rightWork1, IndexedTree t2, DistanceOptions options) {
+        long left = leftWork1 * DistanceEstimate.keyrootWork(t2, Decomposition.LEFT);
+        long right = rightWork1 * DistanceEstimate.keyrootWork(t2, Decomposition.RIGHT);
+
+        Decomposition decomposition = options.getDecomposition();
+        if (decomposition == null)
+            decomposition = right < left ? Decomposition.RIGHT : Decomposition.LEFT;
+
+        // the table of both roots is the largest one
+        long cells = (long) size1 * t2.size();
+        return new DistancePlan(decomposition, left, right, cells >= options.getParallelThreshold(),
+                (long) (size1 + 1) * (t2.size() + 1) >= options.getOffHeapThreshold());
+    }
+
+    void log() {
+        if (LOGGER.isLoggable(Level.FINE))
+            LOGGER.fine("Tree distance plan: " + this);
+    }
+
+    public Decomposition getDecomposition() {
+        return this.decomposition;
+    }
+
+    /**
+     * Returns the number of cells calculated with decomposition {@code decomposition}.
+     * @param decomposition the decomposition
+     * @return the number of calculated cells
+     */
+    public long getCells(Decomposition decomposition) {
+        return decomposition == Decomposition.LEFT ? this.leftCells : this.rightCells;
+    }
+
+    /**
+     * Returns the number of cells calculated with the planned decomposition.
+     * @return the number of calculated cells
+     */
+    public long getCells() {
+        return getCells(this.decomposition);
+    }
+
+    /**
+     * Returns true if the largest distance tables are calculated in parallel.
+     * @return true if the calculation is parallel
+     */
+    public boolean isParallel() {
+        return this.parallel;
+    }
+
+    /**
+     * Returns true if the largest distance tables are held off the heap.
+     * @return true if tables are held off the heap
+     */
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
+    @Override
+    public String toString() {
+        return this.decomposition + " decomposition, " + getCells() + " cells (left " + this.leftCells + ", right "
+                + this.rightCells + ")" + (this.parallel ? ", parallel" : "") + (this.offHeap ? ", off-heap" : "");
+    }
+}
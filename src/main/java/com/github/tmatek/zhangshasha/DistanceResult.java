@@ -0,0 +1,39 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * The result of a tree distance calculation with a {@link DistanceBudget}. If the calculation finished within its
+ * budget, the result is the exact tree distance; otherwise it is the best upper bound found before the budget was
+ * exhausted.
+ */
+public final class DistanceResult {
+
+    private final int distance;
+
+    private final boolean exact;
+
+    DistanceResult(int distance, boolean exact) {
+        this.distance = distance;
+        this.exact = exact;
+    }
+
+    /**
+     * Returns the tree distance, or its upper bound if the result is not exact.
+     * @return the tree distance or its upper bound
+     */
+    public int getDistance() {
+        return this.distance;
+    }
+
+    /**
+     * Returns true if {@link #getDistance()} is the exact tree distance.
+     * @return true if the result is the exact tree distance
+     */
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    @Override
+    public String toString() {
+        return (this.exact ? "" : "<= ") + this.distance;
+    }
+}
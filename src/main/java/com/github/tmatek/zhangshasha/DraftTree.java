@@ -0,0 +1,326 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility class which applies tree transformations to a {@link PersistentTreeNode} tree. Only the nodes referenced by
+ * the transformations and their ancestors are wrapped into mutable drafts, which are transformed by
+ * {@link TreeDistance#transformTree(EditableTreeNode, List)}. The transformed drafts are then turned into new
+ * persistent nodes, while every subtree without drafts, and every draft whose label and children are unchanged, is
+ * shared with the original tree.
+ */
+final class DraftTree {
+
+    private DraftTree() {
+    }
+
+    /**
+     * Applies transformations {@code transformations} to the tree given by root node {@code root}, returning the root
+     * of the transformed tree. The original tree is not changed.
+     */
+    static PersistentTreeNode transform(PersistentTreeNode root, List<TreeTransformation> transformations) {
+        Set<TreeNode> inserted = identitySet(), deleted = identitySet(), touched = identitySet();
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() == TreeOperation.OP_INSERT_NODE)
+                inserted.add(t.getFirstNode());
+        }
+
+        List<TreeTransformation> effective = new ArrayList<>();
+        for (TreeTransformation t : transformations) {
+            switch (t.getOperation()) {
+                case OP_INSERT_NODE:
+                    if (t.getSecondNode() != null && !inserted.contains(t.getSecondNode()))
+                        touched.add(t.getSecondNode());
+
+                    for (TreeNode descendant : t.getDescendants()) {
+                        if (!inserted.contains(descendant))
+                            touched.add(descendant);
+                    }
+
+                    break;
+
+                case OP_MOVE_SUBTREE:
+                    // the moved subtree itself is shared, only its old and new parents change
+                    touched.add(t.getFirstNode());
+                    if (!inserted.contains(t.getSecondNode()))
+                        touched.add(t.getSecondNode());
+
+                    break;
+
+                case OP_DELETE_NODE:
+                    deleted.add(t.getFirstNode());
+                    touched.add(t.getFirstNode());
+                    break;
+
+                default:
+                    // renames to the same label need not be applied
+                    PersistentTreeNode renamed = (PersistentTreeNode) t.getFirstNode();
+                    if (renamed.withLabelOf((PersistentTreeNode) t.getSecondNode()) == renamed)
+                        continue;
+
+                    touched.add(renamed);
+            }
+
+            effective.add(t);
+        }
+
+        Map<TreeNode, Draft> drafts = new IdentityHashMap<>();
+        Draft draft = draft(root, touched, deleted, drafts);
+
+        // the same transformations, referring to drafts instead of nodes
+        List<TreeTransformation> drafted = new ArrayList<>();
+        for (TreeTransformation t : effective) {
+            TreeTransformation d;
+            if (t.getOperation() == TreeOperation.OP_RENAME_NODE) {
+                // the node providing the new label is not part of the tree
+                d = new TreeTransformation(t.getOperation(), t.getCost(), drafts.get(t.getFirstNode()),
+                        new Draft(null, (PersistentTreeNode) t.getSecondNode(), new ArrayList<>()));
+            } else if (t.getSecondNode() == null) {
+                d = new TreeTransformation(t.getOperation(), t.getCost(), draftOf(t.getFirstNode(), drafts));
+            } else {
+                d = new TreeTransformation(t.getOperation(), t.getCost(), draftOf(t.getFirstNode(), drafts),
+                        draftOf(t.getSecondNode(), drafts));
+            }
+
+            d.setPosition(t.getPosition());
+            d.setChildrenCount(t.getChildrenCount());
+            List<TreeNode> descendants = new ArrayList<>();
+            for (TreeNode descendant : t.getDescendants())
+                descendants.add(draftOf(descendant, drafts));
+
+            d.setDescendants(descendants);
+            drafted.add(d);
+        }
+
+        return ((Draft) TreeDistance.transformTree(draft, drafted)).materialize();
+    }
+
+    private static Set<TreeNode> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Returns the draft of node {@code node}; inserted nodes, which are not part of the tree, receive new drafts.
+     */
+    private static Draft draftOf(TreeNode node, Map<TreeNode, Draft> drafts) {
+        return drafts.computeIfAbsent(node, n -> new Draft(null, (PersistentTreeNode) n, new ArrayList<>()));
+    }
+
+    /**
+     * Wraps the root, every touched node and its ancestors and the children of deleted nodes into drafts, which are
+     * stored into {@code drafts}. Children of drafts which are not wrapped remain the original nodes.
+     */
+    private static Draft draft(PersistentTreeNode root, Set<TreeNode> touched, Set<TreeNode> deleted,
+                               Map<TreeNode, Draft> drafts) {
+        // iterative depth-first traversal, so that deep trees do not overflow the call stack
+        Deque<DraftFrame> stack = new ArrayDeque<>();
+        stack.push(new DraftFrame(root, true));
+
+        while (true) {
+            DraftFrame top = stack.peek();
+            if (top.index < top.node.getChildren().size()) {
+                // children of deleted nodes are moved to their grandparents, so they must be drafts
+                stack.push(new DraftFrame((PersistentTreeNode) top.node.getChildren().get(top.index),
+                        deleted.contains(top.node)));
+                continue;
+            }
+
+            stack.pop();
+            TreeNode done = top.finish(touched, drafts);
+            if (stack.isEmpty())
+                return (Draft) done;
+
+            stack.peek().add(done);
+        }
+    }
+
+    /**
+     * A node visited by the traversal, with the children visited so far.
+     */
+    private static final class DraftFrame {
+
+        private final PersistentTreeNode node;
+
+        private final boolean forced;
+
+        private int index;
+
+        // the children, created once the first child is wrapped into a draft
+        private List<TreeNode> children;
+
+        DraftFrame(PersistentTreeNode node, boolean forced) {
+            this.node = node;
+            this.forced = forced;
+        }
+
+        void add(TreeNode child) {
+            if (this.children == null && child != this.node.getChildren().get(this.index))
+                this.children = new ArrayList<>(this.node.getChildren().subList(0, this.index));
+
+            if (this.children != null)
+                this.children.add(child);
+
+            this.index++;
+        }
+
+        TreeNode finish(Set<TreeNode> touched, Map<TreeNode, Draft> drafts) {
+            if (!this.forced && this.children == null && !touched.contains(this.node))
+                return this.node;
+
+            Draft draft = new Draft(this.node, this.node,
+                    this.children == null ? new ArrayList<>(this.node.getChildren()) : this.children);
+            for (TreeNode child : draft.children) {
+                if (child instanceof Draft)
+                    ((Draft) child).parent = draft;
+            }
+
+            drafts.put(this.node, draft);
+            return draft;
+        }
+    }
+
+    /**
+     * A mutable copy of a node of a persistent tree or of an inserted node, whose children are drafts or original
+     * nodes.
+     */
+    private static final class Draft implements EditableTreeNode {
+
+        // the original node, or null for inserted nodes
+        private final PersistentTreeNode original;
+
+        // the node providing the label
+        private PersistentTreeNode label;
+
+        private final List<TreeNode> children;
+
+        private TreeNode parent;
+
+        Draft(PersistentTreeNode original, PersistentTreeNode label, List<TreeNode> children) {
+            this.original = original;
+            this.label = label;
+            this.children = children;
+        }
+
+        @Override
+        public List<? extends TreeNode> getChildren() {
+            return this.children;
+        }
+
+        @Override
+        public TreeNode getParent() {
+            return this.parent;
+        }
+
+        @Override
+        public int positionOfChild(TreeNode child) {
+            for (int i = 0; i < this.children.size(); i++) {
+                if (this.children.get(i) == child)
+                    return i;
+            }
+
+            return -1;
+        }
+
+        @Override
+        public int getTransformationCost(TreeOperation operation, TreeNode other) {
+            return this.label.getTransformationCost(operation, other instanceof Draft ? ((Draft) other).label : other);
+        }
+
+        @Override
+        public TreeNode cloneNode() {
+            return new Draft(null, this.label, new ArrayList<>());
+        }
+
+        @Override
+        public void setParent(TreeNode newParent) {
+            this.parent = newParent;
+        }
+
+        @Override
+        public void addChildAt(TreeNode child, int position) {
+            this.children.add(position, child);
+        }
+
+        @Override
+        public void renameNodeTo(TreeNode other) {
+            this.label = this.label.withLabelOf(((Draft) other).label);
+        }
+
+        @Override
+        public void deleteChild(TreeNode child) {
+            // nodes of persistent trees may define equality by value, so children are removed by reference
+            int position = positionOfChild(child);
+            if (position != -1)
+                this.children.remove(position);
+        }
+
+        /**
+         * Creates the persistent subtree of this draft, sharing unchanged nodes with the original tree.
+         */
+        PersistentTreeNode materialize() {
+            Deque<MaterializeFrame> stack = new ArrayDeque<>();
+            stack.push(new MaterializeFrame(this));
+
+            while (true) {
+                MaterializeFrame top = stack.peek();
+                if (top.children.size() < top.draft.children.size()) {
+                    TreeNode child = top.draft.children.get(top.children.size());
+                    if (child instanceof Draft)
+                        stack.push(new MaterializeFrame((Draft) child));
+                    else
+                        top.children.add((PersistentTreeNode) child);
+
+                    continue;
+                }
+
+                stack.pop();
+                PersistentTreeNode done = top.finish();
+                if (stack.isEmpty())
+                    return done;
+
+                stack.peek().children.add(done);
+            }
+        }
+    }
+
+    /**
+     * A draft visited by the traversal, with the persistent nodes of its children created so far.
+     */
+    private static final class MaterializeFrame {
+
+        private final Draft draft;
+
+        private final List<PersistentTreeNode> children = new ArrayList<>();
+
+        MaterializeFrame(Draft draft) {
+            this.draft = draft;
+        }
+
+        PersistentTreeNode finish() {
+            // a renamed node keeps the children of the original node
+            if (this.draft.original != null && sameChildren(this.draft.original.getChildren(), this.children))
+                return this.draft.label;
+
+            return this.draft.label.withChildren(this.children);
+        }
+
+        private static boolean sameChildren(List<? extends TreeNode> original, List<PersistentTreeNode> children) {
+            if (original.size() != children.size())
+                return false;
+
+            for (int i = 0; i < children.size(); i++) {
+                if (original.get(i) != children.get(i))
+                    return false;
+            }
+
+            return true;
+        }
+    }
+}
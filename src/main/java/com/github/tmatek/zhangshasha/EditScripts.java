@@ -0,0 +1,109 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Utility class which converts a mapping between the nodes of two trees into a list of {@link TreeTransformation}s,
+ * which can be applied by {@link TreeDistance#transformTree(EditableTreeNode, List)} or, for persistent trees, by
+ * {@link TreeDistance#transformTree(PersistentTreeNode, List)}.
+ */
+final class EditScripts {
+
+    private EditScripts() {
+    }
+
+    /**
+     * Returns the list of tree transformations given by mapping {@code mapping}. Unmapped nodes of the first tree
+     * are deleted, mapped nodes are renamed and unmapped nodes of the second tree are inserted. As in
+     * {@link TreeDistance#treeDistanceZhangShasha(EditableTreeNode, EditableTreeNode)}, all deletes come first, then
+     * all renames and then all inserts, ordered so that parents are inserted before their children and right
+     * siblings before left ones.
+     * <br><br>
+     * The mapping must be a valid ordered edit mapping (it preserves the ancestor and sibling orders) and must map
+     * the root of the first tree.
+     *
+     * @param first   the index of the first tree
+     * @param second  the index of the second tree
+     * @param mapping the postorder ID of the mapped node of the second tree for every node of the first tree, or -1
+     * @param costs   the transformation costs, labelled by postorder IDs
+     * @return a list of tree transformations required to transform first tree into the second
+     */
+    static List<TreeTransformation> fromMapping(NodeIndex first, NodeIndex second, int[] mapping,
+                                                LabelCostModel costs) {
+        IndexedTree t1 = first.tree(), t2 = second.tree();
+        int n1 = t1.size(), n2 = t2.size();
+
+        List<TreeTransformation> deletes = new ArrayList<>(), renames = new ArrayList<>(),
+                inserts = new ArrayList<>();
+
+        // the node of the edited tree which corresponds to every node of the second tree
+        TreeNode[] counterparts = new TreeNode[n2];
+        boolean[] mapped = new boolean[n2];
+
+        for (int i = 0; i < n1; i++) {
+            if (mapping[i] == -1) {
+                deletes.add(new TreeTransformation(TreeOperation.OP_DELETE_NODE, costs.deleteCost(i), first.node(i)));
+            } else {
+                renames.add(new TreeTransformation(TreeOperation.OP_RENAME_NODE, costs.renameCost(i, mapping[i]),
+                        first.node(i), second.node(mapping[i])));
+                counterparts[mapping[i]] = first.node(i);
+                mapped[mapping[i]] = true;
+            }
+        }
+
+        // positions of nodes among their siblings; children have increasing postorder IDs
+        int[] positions = new int[n2], childCounts = new int[n2];
+        for (int j = 0; j < n2; j++) {
+            int parent = t2.getParent(j);
+            if (parent != -1)
+                positions[j] = childCounts[parent]++;
+        }
+
+        for (int j = 0; j < n2; j++) {
+            if (!mapped[j])
+                counterparts[j] = copyOf(second.node(j));
+        }
+
+        // descending postorder inserts parents before children and right siblings before left ones
+        for (int j = n2 - 1; j >= 0; j--) {
+            if (mapped[j])
+                continue;
+
+            TreeTransformation t;
+            int parent = t2.getParent(j);
+            if (parent == -1) {
+                t = new TreeTransformation(TreeOperation.OP_INSERT_NODE, costs.insertCost(j), counterparts[j]);
+            } else {
+                t = new TreeTransformation(TreeOperation.OP_INSERT_NODE, costs.insertCost(j), counterparts[j],
+                        counterparts[parent]);
+                t.setPosition(positions[j]);
+                t.setChildrenCount(childCounts[parent]);
+            }
+
+            // all descendants are candidates for demotion
+            List<TreeNode> descendants = new ArrayList<>();
+            for (int d = t2.getLeftmostLeaf(j); d < j; d++)
+                descendants.add(counterparts[d]);
+
+            t.setDescendants(descendants);
+            inserts.add(t);
+        }
+
+        List<TreeTransformation> transformations = new ArrayList<>(deletes);
+        transformations.addAll(renames);
+        transformations.addAll(inserts);
+        return transformations;
+    }
+
+    /**
+     * Returns a copy of node {@code node} without children, to be inserted into the edited tree.
+     */
+    private static TreeNode copyOf(TreeNode node) {
+        if (node instanceof PersistentTreeNode)
+            return ((PersistentTreeNode) node).withChildren(Collections.emptyList());
+
+        return ((EditableTreeNode) node).cloneNode();
+    }
+}
@@ -0,0 +1,240 @@
+package com.github.tmatek.zhangshasha;
+
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A compact, preprocessed form of an ordered tree, as required by the Zhang-Shasha algorithm. Nodes are identified
+ * by their postorder IDs in the range [0, {@link #size()}) and every node carries an integer label. For each node
+ * the tree stores its leftmost leaf descendant and its parent; the keyroots of the tree are stored in postorder.
+ * <br><br>
+ * The columns are held in {@link IntBuffer}s, so an indexed tree can be backed either by heap arrays or by a
+ * memory-mapped file (see {@link IndexedTreeStore}) without copying.
+ */
+public final class IndexedTree {
+
+    private final IntBuffer labels, leftmostLeaves, parents, keyroots;
+
+    IndexedTree(IntBuffer labels, IntBuffer leftmostLeaves, IntBuffer parents, IntBuffer keyroots) {
+        this.labels = labels;
+        this.leftmostLeaves = leftmostLeaves;
+        this.parents = parents;
+        this.keyroots = keyroots;
+    }
+
+    /**
+     * Creates an indexed tree from the tree given by the root node {@code root}. The label of every node is given
+     * by {@code labeler}; nodes which should be considered equal by a {@link LabelCostModel} must receive the same
+     * label.
+     *
+     * @param root    the root of the tree structure
+     * @param labeler a function assigning integer labels to tree nodes
+     * @return the indexed form of the tree
+     * @throws IllegalArgumentException if {@code root} is {@code null}
+     */
+    public static IndexedTree of(TreeNode root, ToIntFunction<? super TreeNode> labeler) {
+        return of(root, TreeNode::getChildren, labeler);
+    }
+
+    /**
+     * Creates an indexed tree from a tree of arbitrary node type {@code T}, given by the root node {@code root} and
+     * accessor functions. The tree is traversed once and no wrapper objects are created for its nodes; in
+     * particular, the nodes need not implement {@link TreeNode} nor provide access to their parents.
+     *
+     * @param root     the root of the tree structure
+     * @param children a function returning the ordered children of a node
+     * @param labeler  a function assigning integer labels to nodes
+     * @param <T>      the type of tree nodes
+     * @return the indexed form of the tree
+     * @throws IllegalArgumentException if {@code root} is {@code null}
+     */
+    public static <T> IndexedTree of(T root, Function<? super T, ? extends Iterable<? extends T>> children,
+                                     ToIntFunction<? super T> labeler) {
+        if (root == null)
+            throw new IllegalArgumentException("The tree structure must not be null");
+
+        IndexedTreeBuilder builder = new IndexedTreeBuilder();
+        builder.startNode(labeler.applyAsInt(root));
+
+        // iterative depth-first traversal, so that deep trees do not overflow the call stack
+        Deque<Iterator<? extends T>> stack = new ArrayDeque<>();
+        stack.push(children.apply(root).iterator());
+
+        while (!stack.isEmpty()) {
+            Iterator<? extends T> top = stack.peek();
+            if (top.hasNext()) {
+                T child = top.next();
+                builder.startNode(labeler.applyAsInt(child));
+                stack.push(children.apply(child).iterator());
+            } else {
+                builder.endNode();
+                stack.pop();
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Completes the indexed form of a tree, given the labels and leftmost leaf descendants of its nodes in
+     * postorder. Parents and keyroots are derived from the leftmost leaf descendants.
+     *
+     * @param labels the labels of nodes, indexed by postorder IDs
+     * @param lmld   the postorder IDs of leftmost leaf descendants, indexed by postorder IDs
+     * @param n      the number of nodes in the tree
+     * @return the indexed form of the tree
+     */
+    static IndexedTree fromPostorder(int[] labels, int[] lmld, int n) {
+        int[] parents = new int[n];
+        int[] stack = new int[n];
+        int top = 0;
+
+        // the subtree of node j spans postorder IDs [lmld[j], j], so its children are exactly the roots of
+        // completed subtrees within that range
+        for (int j = 0; j < n; j++) {
+            while (top > 0 && stack[top - 1] >= lmld[j])
+                parents[stack[--top]] = j;
+
+            stack[top++] = j;
+        }
+
+        if (top != 1)
+            throw new IllegalArgumentException("The postorder sequence does not describe a single tree");
+
+        parents[n - 1] = -1;
+
+        // a keyroot is either the root or a node with a left sibling
+        int[] keyroots = new int[n];
+        int count = 0;
+        for (int j = 0; j < n; j++) {
+            if (parents[j] == -1 || lmld[parents[j]] != lmld[j])
+                keyroots[count++] = j;
+        }
+
+        return new IndexedTree(IntBuffer.wrap(labels, 0, n), IntBuffer.wrap(lmld, 0, n),
+                IntBuffer.wrap(parents), IntBuffer.wrap(keyroots, 0, count));
+    }
+
+    /**
+     * Returns the mirror image of this tree, in which the children of every node are in reverse order.
+     *
+     * @return the mirrored tree
+     */
+    public IndexedTree mirror() {
+        int n = size();
+        int[] ids = mirroredIds(), labels = new int[n], leftmostLeaves = new int[n], rightmostLeaves = new int[n];
+
+        // the last child of a node directly precedes it in postorder
+        for (int j = 0; j < n; j++)
+            rightmostLeaves[j] = getLeftmostLeaf(j) == j ? j : rightmostLeaves[j - 1];
+
+        for (int j = 0; j < n; j++) {
+            labels[ids[j]] = getLabel(j);
+            leftmostLeaves[ids[j]] = ids[rightmostLeaves[j]];
+        }
+
+        return fromPostorder(labels, leftmostLeaves, n);
+    }
+
+    /**
+     * Returns the postorder IDs of nodes in the mirrored tree, indexed by their postorder IDs in this tree. The
+     * postorder of the mirrored tree is the reversed preorder of this tree.
+     */
+    int[] mirroredIds() {
+        int n = size();
+        int[] preorder = new int[n];
+
+        // a node follows its parent and the subtrees of its left siblings, which span postorder IDs from the
+        // leftmost leaf descendant of the parent to its own leftmost leaf descendant
+        for (int j = n - 2; j >= 0; j--) {
+            int parent = getParent(j);
+            preorder[j] = preorder[parent] + 1 + getLeftmostLeaf(j) - getLeftmostLeaf(parent);
+        }
+
+        int[] ids = new int[n];
+        for (int j = 0; j < n; j++)
+            ids[j] = n - 1 - preorder[j];
+
+        return ids;
+    }
+
+    /**
+     * Returns the number of nodes in this tree.
+     * @return the number of nodes in this tree
+     */
+    public int size() {
+        return this.labels.limit();
+    }
+
+    /**
+     * Returns the postorder ID of the root node, which is always the last node in postorder.
+     * @return the postorder ID of the root node
+     */
+    public int getRoot() {
+        return this.labels.limit() - 1;
+    }
+
+    /**
+     * Returns the label of node {@code node}.
+     * @param node the postorder ID of the node
+     * @return the label of the node
+     */
+    public int getLabel(int node) {
+        return this.labels.get(node);
+    }
+
+    /**
+     * Returns the postorder ID of the leftmost leaf descendant of node {@code node}.
+     * @param node the postorder ID of the node
+     * @return the postorder ID of the leftmost leaf descendant
+     */
+    public int getLeftmostLeaf(int node) {
+        return this.leftmostLeaves.get(node);
+    }
+
+    /**
+     * Returns the postorder ID of the parent of node {@code node} or -1 if the node is the root of the tree.
+     * @param node the postorder ID of the node
+     * @return the postorder ID of the parent node or -1 for the root
+     */
+    public int getParent(int node) {
+        return this.parents.get(node);
+    }
+
+    /**
+     * Returns the number of keyroots of this tree.
+     * @return the number of keyroots
+     */
+    public int getKeyrootCount() {
+        return this.keyroots.limit();
+    }
+
+    /**
+     * Returns the postorder ID of the {@code index}-th keyroot. Keyroots are ordered according to postorder IDs.
+     * @param index the index of the keyroot in range [0, {@link #getKeyrootCount()})
+     * @return the postorder ID of the keyroot
+     */
+    public int getKeyroot(int index) {
+        return this.keyroots.get(index);
+    }
+
+    IntBuffer labels() {
+        return this.labels;
+    }
+
+    IntBuffer leftmostLeaves() {
+        return this.leftmostLeaves;
+    }
+
+    IntBuffer parents() {
+        return this.parents;
+    }
+
+    IntBuffer keyroots() {
+        return this.keyroots;
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.Arrays;
+
+/**
+ * An event-driven builder of {@link IndexedTree}s. The tree is described by a sequence of {@link #startNode(int)}
+ * and {@link #endNode()} calls in document order, as produced by streaming parsers (e.g. StAX or a streaming JSON
+ * parser): a node is started, all of its children are described and the node is ended. The builder only keeps the
+ * postorder arrays and a stack of currently open nodes, so no node objects are ever materialized.
+ * <br><br>
+ * For example, tree <code>A(B,C(D))</code> is described by the following calls:
+ * <code>startNode(A), startNode(B), endNode(), startNode(C), startNode(D), endNode(), endNode(), endNode()</code>.
+ */
+public final class IndexedTreeBuilder {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // postorder arrays of completed nodes
+    private int[] labels, leftmostLeaves;
+
+    private int size;
+
+    // labels and leftmost leaf descendants (or -1 if no child has completed yet) of currently open nodes
+    private int[] openLabels, openLeftmostLeaves;
+
+    private int depth;
+
+    public IndexedTreeBuilder() {
+        reset();
+    }
+
+    private void reset() {
+        this.labels = new int[INITIAL_CAPACITY];
+        this.leftmostLeaves = new int[INITIAL_CAPACITY];
+        this.openLabels = new int[INITIAL_CAPACITY];
+        this.openLeftmostLeaves = new int[INITIAL_CAPACITY];
+        this.size = 0;
+        this.depth = 0;
+    }
+
+    /**
+     * Starts a new node with label {@code label}. The node becomes the last child of the currently open node, or the
+     * root of the tree if there is no open node.
+     *
+     * @param label the label of the node
+     * @return this builder
+     * @throws IllegalStateException if the root of the tree has already been ended
+     */
+    public IndexedTreeBuilder startNode(int label) {
+        if (this.depth == 0 && this.size > 0)
+            throw new IllegalStateException("The tree must have a single root node");
+
+        if (this.depth == this.openLabels.length) {
+            this.openLabels = Arrays.copyOf(this.openLabels, this.depth * 2);
+            this.openLeftmostLeaves = Arrays.copyOf(this.openLeftmostLeaves, this.depth * 2);
+        }
+
+        this.openLabels[this.depth] = label;
+        this.openLeftmostLeaves[this.depth] = -1;
+        this.depth++;
+        return this;
+    }
+
+    /**
+     * Ends the currently open node, assigning it the next postorder ID.
+     *
+     * @return this builder
+     * @throws IllegalStateException if there is no open node
+     */
+    public IndexedTreeBuilder endNode() {
+        if (this.depth == 0)
+            throw new IllegalStateException("There is no open node to end");
+
+        if (this.size == this.labels.length) {
+            this.labels = Arrays.copyOf(this.labels, this.size * 2);
+            this.leftmostLeaves = Arrays.copyOf(this.leftmostLeaves, this.size * 2);
+        }
+
+        this.depth--;
+        int id = this.size++;
+        this.labels[id] = this.openLabels[this.depth];
+
+        // a leaf is its own leftmost leaf descendant
+        int leftmost = this.openLeftmostLeaves[this.depth];
+        this.leftmostLeaves[id] = leftmost == -1 ? id : leftmost;
+
+        // the first child determines the leftmost leaf descendant of its parent
+        if (this.depth > 0 && this.openLeftmostLeaves[this.depth - 1] == -1)
+            this.openLeftmostLeaves[this.depth - 1] = this.leftmostLeaves[id];
+
+        return this;
+    }
+
+    /**
+     * Returns the number of nodes which have been ended so far.
+     * @return the number of completed nodes
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of currently open nodes.
+     * @return the number of open nodes
+     */
+    public int depth() {
+        return this.depth;
+    }
+
+    /**
+     * Completes the tree and returns its indexed form. Afterwards the builder is empty and can be used to build
+     * another tree.
+     *
+     * @return the indexed form of the described tree
+     * @throws IllegalStateException if no tree has been described or some nodes are still open
+     */
+    public IndexedTree build() {
+        if (this.size == 0 || this.depth > 0)
+            throw new IllegalStateException("The tree is incomplete");
+
+        IndexedTree tree = IndexedTree.fromPostorder(this.labels, this.leftmostLeaves, this.size);
+        reset();
+        return tree;
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * Utility class for calculating the tree distance between two {@link IndexedTree}s. The algorithm is the same as in
+ * {@link TreeDistance}, but it runs directly on the postorder arrays of the indexed trees and only keeps integer
+ * distance tables, so no {@link TreeNode} objects are needed.
+ * <br><br>
+ * As with {@link TreeDistance}, the root of the first tree is never deleted.
+ * <br><br>
+ * Every calculation is planned by {@link DistancePlan}, which chooses the cheaper {@link Decomposition} for the
+ * shapes of both trees.
+ */
+public final class IndexedTreeDistance {
+
+    private IndexedTreeDistance() {
+    }
+
+    /**
+     * Calculates the tree distance between indexed trees {@code t1} and {@code t2}, taking into account that both
+     * trees are ordered i.e. the order of siblings is important.
+     *
+     * @param t1    the first tree structure
+     * @param t2    the second tree structure
+     * @param costs the transformation costs for node labels
+     * @return the tree distance between {@code t1} and {@code t2}
+     * @throws IllegalArgumentException if {@code t1}, {@code t2} or {@code costs} is {@code null}
+     */
+    public static int treeDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs) {
+        if (t1 == null || t2 == null || costs == null)
+            throw new IllegalArgumentException("Both tree structures and the cost model must not be null");
+
+        return exactTreeDistance(t1, t2, costs, null, null);
+    }
+
+    /**
+     * Calculates the tree distance between indexed trees {@code t1} and {@code t2} with options {@code options}.
+     * Large distance tables may be calculated in parallel, in which case {@code costs} must be thread-safe.
+     *
+     * @param t1      the first tree structure
+     * @param t2      the second tree structure
+     * @param costs   the transformation costs for node labels
+     * @param options the options of the calculation
+     * @return the tree distance between {@code t1} and {@code t2}
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     */
+    public static int treeDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs, DistanceOptions options) {
+        if (t1 == null || t2 == null || costs == null || options == null)
+            throw new IllegalArgumentException("Both tree structures, the cost model and the options must not be null");
+
+        return exactTreeDistance(t1, t2, costs, null, options);
+    }
+
+    /**
+     * Calculates the tree distance between indexed trees {@code t1} and {@code t2} within budget {@code budget}.
+     * A first upper bound is given by mapping only the roots of both trees and a better one by the constrained tree
+     * distance (see {@link ConstrainedTreeDistance}). If the budget is exhausted before the exact tree distance has
+     * been calculated, the best upper bound is returned instead.
+     *
+     * @param t1     the first tree structure
+     * @param t2     the second tree structure
+     * @param costs  the transformation costs for node labels
+     * @param budget the budget of the calculation
+     * @return the tree distance or its upper bound
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     * @throws java.util.concurrent.CancellationException if the calculation has been cancelled
+     */
+    public static DistanceResult treeDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs,
+                                              DistanceBudget budget) {
+        return treeDistance(t1, t2, costs, budget, new DistanceOptions());
+    }
+
+    /**
+     * Calculates the tree distance between indexed trees {@code t1} and {@code t2} within budget {@code budget} and
+     * with options {@code options}, as in {@link #treeDistance(IndexedTree, IndexedTree, LabelCostModel,
+     * DistanceBudget)}.
+     *
+     * @param t1      the first tree structure
+     * @param t2      the second tree structure
+     * @param costs   the transformation costs for node labels
+     * @param budget  the budget of the calculation
+     * @param options the options of the calculation
+     * @return the tree distance or its upper bound
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     * @throws java.util.concurrent.CancellationException if the calculation has been cancelled
+     */
+    public static DistanceResult treeDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs,
+                                              DistanceBudget budget, DistanceOptions options) {
+        if (t1 == null || t2 == null || costs == null || budget == null || options == null)
+            throw new IllegalArgumentException(
+                    "Both tree structures, the cost model, the budget and the options must not be null");
+
+        if (budget.isUnlimited())
+            return new DistanceResult(exactTreeDistance(t1, t2, costs, budget, options), true);
+
+        int bound = rootMappingDistance(t1, t2, costs);
+        try {
+            // the bound is not needed if the exact calculation is known to fit into the budget
+            if (budget.fits(DistancePlan.of(t1, t2, options).getCells()))
+                return new DistanceResult(exactTreeDistance(t1, t2, costs, budget, options), true);
+
+            bound = Math.min(bound, new ConstrainedTreeDistance.Computation(t1, t2, costs, false, budget).run());
+            return new DistanceResult(exactTreeDistance(t1, t2, costs, budget, options), true);
+        } catch (DistanceBudget.BudgetExceededException e) {
+            return new DistanceResult(bound, false);
+        }
+    }
+
+    /**
+     * Returns the cost of the trivial mapping, which only maps the root of {@code t1} to the root of {@code t2},
+     * deleting and inserting all other nodes.
+     */
+    private static int rootMappingDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs) {
+        int cost = costs.renameCost(t1.getLabel(t1.getRoot()), t2.getLabel(t2.getRoot()));
+        for (int i = 0; i < t1.getRoot(); i++)
+            cost += costs.deleteCost(t1.getLabel(i));
+
+        for (int j = 0; j < t2.getRoot(); j++)
+            cost += costs.insertCost(t2.getLabel(j));
+
+        return cost;
+    }
+
+    /**
+     * Calculates an optimal mapping between the nodes of indexed trees {@code t1} and {@code t2}, which describes the
+     * edit script of the tree distance: nodes of {@code t1} mapped to -1 are deleted, nodes of {@code t2} no node is
+     * mapped to are inserted and all other nodes of {@code t1} are renamed to the nodes they are mapped to.
+     *
+     * @param t1      the first tree structure
+     * @param t2      the second tree structure
+     * @param costs   the transformation costs for node labels
+     * @param options the options of the calculation
+     * @return the postorder ID of the node of {@code t2} mapped to every node of {@code t1}, or -1
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     */
+    public static int[] editMapping(IndexedTree t1, IndexedTree t2, LabelCostModel costs, DistanceOptions options) {
+        if (t1 == null || t2 == null || costs == null || options == null)
+            throw new IllegalArgumentException("Both tree structures, the cost model and the options must not be null");
+
+        return mapping(t1, t2, costs, options);
+    }
+
+    /**
+     * Calculates an optimal mapping between the nodes of trees {@code t1} and {@code t2} with the planned
+     * decomposition, returning the postorder ID of the node of {@code t2} mapped to every node of {@code t1}, or -1.
+     */
+    static int[] mapping(IndexedTree t1, IndexedTree t2, LabelCostModel costs, DistanceOptions options) {
+        DistancePlan plan = DistancePlan.of(t1, t2, options);
+        plan.log();
+
+        if (plan.getDecomposition() == Decomposition.LEFT) {
+            try (TreeDistanceComputation computation = new TreeDistanceComputation(t1, t2, costs, null, options)) {
+                computation.run();
+                return computation.mapping();
+            }
+        }
+
+        int[] ids1 = t1.mirroredIds(), ids2 = t2.mirroredIds(), mirrored;
+        try (TreeDistanceComputation computation = new TreeDistanceComputation(t1.mirror(), t2.mirror(), costs, null,
+                options)) {
+            computation.run();
+            mirrored = computation.mapping();
+        }
+
+        // translate the mapping of mirrored trees back to the original postorder IDs
+        int[] originals2 = new int[ids2.length];
+        for (int l = 0; l < ids2.length; l++)
+            originals2[ids2[l]] = l;
+
+        int[] mapping = new int[ids1.length];
+        for (int k = 0; k < ids1.length; k++)
+            mapping[k] = mirrored[ids1[k]] == -1 ? -1 : originals2[mirrored[ids1[k]]];
+
+        return mapping;
+    }
+
+    /**
+     * Calculates the tree distance, charging every calculated row of forest distances to {@code budget}, which may
+     * be {@code null}.
+     */
+    static int exactTreeDistance(IndexedTree t1, IndexedTree t2, LabelCostModel costs, DistanceBudget budget,
+                                 DistanceOptions options) {
+        if (options == null)
+            options = new DistanceOptions();
+
+        DistancePlan plan = DistancePlan.of(t1, t2, options);
+        plan.log();
+
+        // the right decomposition is the left decomposition of mirrored trees
+        if (plan.getDecomposition() == Decomposition.RIGHT) {
+            t1 = t1.mirror();
+            t2 = t2.mirror();
+        }
+
+        try (TreeDistanceComputation computation = new TreeDistanceComputation(t1, t2, costs, budget, options)) {
+            return computation.run();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.tmatek.zhangshasha;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An on-disk collection of {@link IndexedTree}s. Trees are stored in a columnar format, so that a stored tree can be
+ * read by memory-mapping the file, with every column exposed as a view of the mapped region and no per-tree parsing
+ * or copying.
+ * <br><br>
+ * The file layout is the following (all values are little-endian):
+ * <ul>
+ * <li>header: magic number, format version, number of trees (ints) and the position of the offset table (long)</li>
+ * <li>tree records: number of nodes, number of keyroots, followed by the label, leftmost leaf descendant and parent
+ * columns and the keyroot column (ints)</li>
+ * <li>offset table: the position of every tree record (longs)</li>
+ * </ul>
+ * The labels are stored as given; trees which are compared with each other should share the same labelling.
+ */
+public final class IndexedTreeStore implements Closeable {
+
+    private static final int MAGIC = 0x5A534954;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 20;
+
+    // the largest region which can be mapped at once
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+
+    private final long[] offsets;
+
+    // mapped segments of the file and the index of the segment holding each tree
+    private final List<ByteBuffer> segments = new ArrayList<>();
+
+    private final long[] segmentStarts;
+
+    private final int[] treeSegments;
+
+    private IndexedTreeStore(FileChannel channel, long[] offsets, long end) throws IOException {
+        this.channel = channel;
+        this.offsets = offsets;
+        this.treeSegments = new int[offsets.length];
+
+        List<Long> starts = new ArrayList<>();
+        int i = 0;
+        while (i < offsets.length) {
+            long start = offsets[i];
+            int j = i;
+
+            // greedily pack consecutive tree records into a single mapped segment
+            while (j + 1 < offsets.length && offsets[j + 1] + recordSize(j + 1, end) - start <= MAX_SEGMENT_SIZE)
+                j++;
+
+            long length = offsets[j] + recordSize(j, end) - start;
+            if (length > MAX_SEGMENT_SIZE)
+                throw new IOException("Tree record " + i + " is too large to be mapped");
+
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int k = i; k <= j; k++)
+                this.treeSegments[k] = this.segments.size();
+
+            this.segments.add(segment);
+            starts.add(start);
+            i = j + 1;
+        }
+
+        this.segmentStarts = new long[starts.size()];
+        for (int k = 0; k < starts.size(); k++)
+            this.segmentStarts[k] = starts.get(k);
+    }
+
+    private long recordSize(int index, long end) {
+        return (index + 1 < this.offsets.length ? this.offsets[index + 1] : end) - this.offsets[index];
+    }
+
+    /**
+     * Writes the trees given by {@code trees} into file {@code file}, replacing any existing content.
+     *
+     * @param file  the path of the file to write
+     * @param trees the trees to store, in order
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Iterable<IndexedTree> trees) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long position = HEADER_SIZE;
+            List<Long> offsets = new ArrayList<>();
+
+            for (IndexedTree tree : trees) {
+                int size = tree.size(), keyroots = tree.getKeyrootCount();
+                ByteBuffer record = ByteBuffer.allocate(4 * (2 + 3 * size + keyroots)).order(ByteOrder.LITTLE_ENDIAN);
+                IntBuffer columns = record.asIntBuffer();
+                columns.put(size).put(keyroots);
+                columns.put(column(tree.labels()));
+                columns.put(column(tree.leftmostLeaves()));
+                columns.put(column(tree.parents()));
+                columns.put(column(tree.keyroots()));
+
+                writeFully(out, record, position);
+                offsets.add(position);
+                position += record.capacity();
+            }
+
+            ByteBuffer table = ByteBuffer.allocate(8 * offsets.size()).order(ByteOrder.LITTLE_ENDIAN);
+            for (long offset : offsets)
+                table.putLong(offset);
+
+            ((Buffer) table).flip();
+            writeFully(out, table, position);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(offsets.size()).putLong(position);
+            ((Buffer) header).flip();
+            writeFully(out, header, 0);
+        }
+    }
+
+    private static IntBuffer column(IntBuffer buffer) {
+        IntBuffer column = buffer.duplicate();
+        ((Buffer) column).clear().limit(buffer.limit());
+        return column;
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += out.write(buffer, position);
+    }
+
+    /**
+     * Opens the store in file {@code file} for reading. The tree records are memory-mapped; the returned store
+     * should be closed when it is no longer used.
+     *
+     * @param file the path of the file to read
+     * @return the opened store
+     * @throws IOException if the file cannot be read or is not a valid store
+     */
+    public static IndexedTreeStore open(Path file) throws IOException {
+        FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(in, header, 0);
+
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new IOException("Not a supported indexed tree store: " + file);
+
+            int count = header.getInt();
+            long tablePosition = header.getLong();
+
+            ByteBuffer table = ByteBuffer.allocate(8 * count).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(in, table, tablePosition);
+
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++)
+                offsets[i] = table.getLong();
+
+            return new IndexedTreeStore(in, offsets, tablePosition);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of indexed tree store");
+
+            position += read;
+        }
+
+        ((Buffer) buffer).flip();
+    }
+
+    /**
+     * Returns the number of trees in this store.
+     * @return the number of trees in this store
+     */
+    public int size() {
+        return this.offsets.length;
+    }
+
+    /**
+     * Returns the {@code index}-th tree of this store. The returned tree is a view of the mapped file and remains
+     * valid as long as the store is reachable.
+     *
+     * @param index the index of the tree in range [0, {@link #size()})
+     * @return the tree at the given index
+     */
+    public IndexedTree get(int index) {
+        int segment = this.treeSegments[index];
+        ByteBuffer record = this.segments.get(segment).duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        ((Buffer) record).position((int) (this.offsets[index] - this.segmentStarts[segment]));
+
+        IntBuffer ints = record.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        int size = ints.get(0), keyroots = ints.get(1);
+
+        return new IndexedTree(slice(ints, 2, size), slice(ints, 2 + size, size), slice(ints, 2 + 2 * size, size),
+                slice(ints, 2 + 3 * size, keyroots));
+    }
+
+    private static IntBuffer slice(IntBuffer ints, int start, int length) {
+        IntBuffer view = ints.duplicate();
+        ((Buffer) view).position(start).limit(start + length);
+        return view.slice();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,184 @@
+package com.github.tmatek.zhangshasha;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A two-dimensional table of integers, used for distance tables. Small tables are held on the heap, while tables
+ * with at least {@link DistanceOptions#getOffHeapThreshold()} cells are held in a memory-mapped temporary file, so
+ * that they neither need to fit on the heap nor burden the garbage collector.
+ * <br><br>
+ * Rows are accessed in ranges of columns: {@link #load(int, int, int, int[])} returns an array holding the requested
+ * columns at their own indices and {@link #store(int, int[], int, int)} writes them back. For heap tables, the
+ * returned array is the row itself and no copying takes place. Distinct cells may be accessed from several threads
+ * concurrently.
+ */
+abstract class IntTable implements Closeable {
+
+    /**
+     * Allocates a table of {@code rows} rows and {@code columns} columns, choosing its storage according to
+     * {@code options}.
+     * @throws UncheckedIOException if an off-heap table cannot be created
+     */
+    static IntTable allocate(int rows, int columns, DistanceOptions options) {
+        if ((long) rows * columns < options.getOffHeapThreshold())
+            return new HeapTable(rows, columns);
+
+        try {
+            return new MappedTable(rows, columns, options.getSpillDirectory());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create an off-heap distance table", e);
+        }
+    }
+
+    /**
+     * Allocates a table of {@code rows} rows and {@code columns} columns on the heap.
+     */
+    static IntTable onHeap(int rows, int columns) {
+        return new HeapTable(rows, columns);
+    }
+
+    abstract boolean isOffHeap();
+
+    abstract int get(int row, int column);
+
+    abstract void set(int row, int column, int value);
+
+    /**
+     * Returns an array holding columns [{@code from}, {@code to}) of row {@code row} at their own indices, which is
+     * either the row itself or {@code scratch}.
+     */
+    abstract int[] load(int row, int from, int to, int[] scratch);
+
+    /**
+     * Stores columns [{@code from}, {@code to}) of array {@code values}, returned by {@link #load}, into row
+     * {@code row}.
+     */
+    abstract void store(int row, int[] values, int from, int to);
+
+    @Override
+    public void close() {
+    }
+
+    private static final class HeapTable extends IntTable {
+
+        private final int[][] rows;
+
+        HeapTable(int rows, int columns) {
+            this.rows = new int[rows][columns];
+        }
+
+        @Override
+        boolean isOffHeap() {
+            return false;
+        }
+
+        @Override
+        int get(int row, int column) {
+            return this.rows[row][column];
+        }
+
+        @Override
+        void set(int row, int column, int value) {
+            this.rows[row][column] = value;
+        }
+
+        @Override
+        int[] load(int row, int from, int to, int[] scratch) {
+            return this.rows[row];
+        }
+
+        @Override
+        void store(int row, int[] values, int from, int to) {
+            if (values != this.rows[row])
+                System.arraycopy(values, from, this.rows[row], from, to - from);
+        }
+    }
+
+    private static final class MappedTable extends IntTable {
+
+        // the largest region which can be mapped at once
+        private static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+        private final FileChannel channel;
+
+        private final IntBuffer[] chunks;
+
+        private final int columns, rowsPerChunk;
+
+        MappedTable(int rows, int columns, Path directory) throws IOException {
+            this.columns = columns;
+            this.rowsPerChunk = (int) Math.max(1, MAX_CHUNK_SIZE / (4L * Math.max(1, columns)));
+            this.chunks = new IntBuffer[(rows + this.rowsPerChunk - 1) / this.rowsPerChunk];
+
+            // the file is removed as soon as the table is closed
+            Path file = directory == null ? Files.createTempFile("zhangshasha", ".table")
+                    : Files.createTempFile(directory, "zhangshasha", ".table");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+
+            try {
+                for (int i = 0; i < this.chunks.length; i++) {
+                    long start = 4L * i * this.rowsPerChunk * columns;
+                    long size = 4L * Math.min(this.rowsPerChunk, rows - i * this.rowsPerChunk) * columns;
+                    this.chunks[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, start, size)
+                            .order(ByteOrder.nativeOrder()).asIntBuffer();
+                }
+            } catch (IOException | RuntimeException e) {
+                this.channel.close();
+                throw e;
+            }
+        }
+
+        @Override
+        boolean isOffHeap() {
+            return true;
+        }
+
+        private int index(int row, int column) {
+            return (row % this.rowsPerChunk) * this.columns + column;
+        }
+
+        @Override
+        int get(int row, int column) {
+            return this.chunks[row / this.rowsPerChunk].get(index(row, column));
+        }
+
+        @Override
+        void set(int row, int column, int value) {
+            this.chunks[row / this.rowsPerChunk].put(index(row, column), value);
+        }
+
+        @Override
+        int[] load(int row, int from, int to, int[] scratch) {
+            IntBuffer view = this.chunks[row / this.rowsPerChunk].duplicate();
+            ((Buffer) view).position(index(row, from));
+            view.get(scratch, from, to - from);
+            return scratch;
+        }
+
+        @Override
+        void store(int row, int[] values, int from, int to) {
+            IntBuffer view = this.chunks[row / this.rowsPerChunk].duplicate();
+            ((Buffer) view).position(index(row, from));
+            view.put(values, from, to - from);
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * A transformation cost function for trees whose nodes are identified only by integer labels, such as
+ * {@link IndexedTree}. It is the label-based counterpart of {@link TreeNode#getTransformationCost(TreeOperation,
+ * TreeNode)}.
+ */
+public interface LabelCostModel {
+
+    /**
+     * A cost model in which every insertion and deletion costs one, renaming a node costs one if the labels
+     * differ and zero otherwise.
+     */
+    LabelCostModel UNIT = new LabelCostModel() {
+
+        @Override
+        public int deleteCost(int label) {
+            return 1;
+        }
+
+        @Override
+        public int insertCost(int label) {
+            return 1;
+        }
+
+        @Override
+        public int renameCost(int from, int to) {
+            return from == to ? 0 : 1;
+        }
+    };
+
+    /**
+     * Returns the cost of deleting a node with label {@code label} from the first tree.
+     * @param label the label of the deleted node
+     * @return the cost of deleting the node
+     */
+    int deleteCost(int label);
+
+    /**
+     * Returns the cost of inserting a node with label {@code label} from the second tree.
+     * @param label the label of the inserted node
+     * @return the cost of inserting the node
+     */
+    int insertCost(int label);
+
+    /**
+     * Returns the cost of renaming a node with label {@code from} of the first tree to label {@code to} of the second
+     * tree.
+     * @param from the label of the node in the first tree
+     * @param to the label of the node in the second tree
+     * @return the cost of renaming the node
+     */
+    int renameCost(int from, int to);
+
+}
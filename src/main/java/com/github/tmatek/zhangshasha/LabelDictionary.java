@@ -0,0 +1,69 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary of node labels, which interns every distinct label once and identifies it by an integer ID. The IDs
+ * are assigned consecutively from zero, so they can be used as labels of {@link IndexedTree}s and as indices of cost
+ * tables of a {@link LabelCostModel}.
+ */
+public final class LabelDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private final List<String> labels = new ArrayList<>();
+
+    /**
+     * Returns the ID of label {@code label}, assigning a new ID if the label has not been interned yet.
+     *
+     * @param label the label
+     * @return the ID of the label
+     * @throws IllegalArgumentException if {@code label} is {@code null}
+     */
+    public int intern(String label) {
+        if (label == null)
+            throw new IllegalArgumentException("The label must not be null");
+
+        Integer id = this.ids.get(label);
+        if (id == null) {
+            id = this.labels.size();
+            this.ids.put(label, id);
+            this.labels.add(label);
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the ID of label {@code label} or -1 if the label has not been interned.
+     *
+     * @param label the label
+     * @return the ID of the label or -1
+     */
+    public int idOf(String label) {
+        Integer id = this.ids.get(label);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the label with ID {@code id}.
+     *
+     * @param id the ID of the label
+     * @return the label
+     * @throws IndexOutOfBoundsException if there is no label with ID {@code id}
+     */
+    public String labelOf(int id) {
+        return this.labels.get(id);
+    }
+
+    /**
+     * Returns the number of interned labels.
+     * @return the number of interned labels
+     */
+    public int size() {
+        return this.labels.size();
+    }
+}
@@ -0,0 +1,347 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Utility class which compacts a list of {@link TreeTransformation}s by replacing the deletes of all nodes of a subtree
+ * and the inserts of all nodes of an identical subtree by a single {@link TreeOperation#OP_MOVE_SUBTREE} operation.
+ */
+final class MoveCompaction {
+
+    private MoveCompaction() {
+    }
+
+    /**
+     * Returns the compacted list of transformations {@code transformations}, which must not have been applied yet.
+     * A subtree is deleted completely if all of its nodes are deleted; an inserted subtree is inserted completely if
+     * all nodes which become its descendants are inserted. Both subtrees are identical if they have the same shape and
+     * the cost of renaming each node of the deleted subtree into its counterpart is zero.
+     * <br><br>
+     * Deleted subtrees are bucketed by their shapes and, if {@code labeler} is not {@code null}, by the labels of
+     * their nodes, which must be equal for nodes renamed at zero cost. Within a bucket, mutually identical subtrees
+     * form a class, so an inserted subtree is compared to one representative of every class of its bucket.
+     */
+    static List<TreeTransformation> compact(List<TreeTransformation> transformations,
+                                            Function<? super TreeNode, ?> labeler) {
+        Map<TreeNode, TreeTransformation> deletes = new IdentityHashMap<>(), inserts = new IdentityHashMap<>();
+        Map<TreeNode, List<TreeNode>> insertedChildren = new IdentityHashMap<>();
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() == TreeOperation.OP_DELETE_NODE)
+                deletes.put(t.getFirstNode(), t);
+            else if (t.getOperation() == TreeOperation.OP_INSERT_NODE)
+                inserts.put(t.getFirstNode(), t);
+        }
+
+        // inserted children of inserted nodes, ordered by their positions
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() == TreeOperation.OP_INSERT_NODE && inserts.containsKey(t.getSecondNode()))
+                insertedChildren.computeIfAbsent(t.getSecondNode(), node -> new ArrayList<>()).add(t.getFirstNode());
+        }
+
+        for (List<TreeNode> children : insertedChildren.values())
+            children.sort(Comparator.comparingInt(child -> inserts.get(child).getPosition()));
+
+        // classes of identical completely deleted subtrees by their shapes, in the order of their deletes
+        Map<TreeNode, Long> deletedShapes = new IdentityHashMap<>();
+        Map<Long, List<Deque<TreeNode>>> deletedByShape = new HashMap<>();
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() != TreeOperation.OP_DELETE_NODE)
+                continue;
+
+            Long shape = deletedShape(t.getFirstNode(), deletes, deletedShapes, labeler);
+            if (shape == null)
+                continue;
+
+            Deque<TreeNode> identicalClass = null;
+            List<Deque<TreeNode>> classes = deletedByShape.computeIfAbsent(shape, s -> new ArrayList<>());
+            for (Deque<TreeNode> c : classes) {
+                if (identical(c.peekFirst(), null, t.getFirstNode(), null)
+                        && identical(t.getFirstNode(), null, c.peekFirst(), null)) {
+                    identicalClass = c;
+                    break;
+                }
+            }
+
+            if (identicalClass == null) {
+                identicalClass = new ArrayDeque<>();
+                classes.add(identicalClass);
+            }
+
+            identicalClass.addLast(t.getFirstNode());
+        }
+
+        // parents are inserted before their children, so the largest inserted subtrees are moved first
+        Set<TreeNode> movedDeleted = Collections.newSetFromMap(new IdentityHashMap<>()),
+                movedInserted = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<TreeNode, TreeNode> moves = new IdentityHashMap<>();
+        Map<TreeNode, Long> insertedShapes = new IdentityHashMap<>();
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() != TreeOperation.OP_INSERT_NODE || t.getSecondNode() == null
+                    || movedInserted.contains(t.getFirstNode()))
+                continue;
+
+            Long shape = insertedShape(t.getFirstNode(), inserts, insertedChildren, insertedShapes, labeler);
+            if (shape == null || !deletedByShape.containsKey(shape))
+                continue;
+
+            Iterator<Deque<TreeNode>> classes = deletedByShape.get(shape).iterator();
+            while (classes.hasNext()) {
+                // subtrees containing moved nodes never become available again
+                Deque<TreeNode> c = classes.next();
+                while (!c.isEmpty() && !available(c.peekFirst(), movedDeleted))
+                    c.pollFirst();
+
+                if (c.isEmpty()) {
+                    classes.remove();
+                    continue;
+                }
+
+                if (!identical(c.peekFirst(), null, t.getFirstNode(), insertedChildren))
+                    continue;
+
+                TreeNode deleted = c.pollFirst();
+                collect(deleted, null, movedDeleted);
+                collect(t.getFirstNode(), insertedChildren, movedInserted);
+                moves.put(t.getFirstNode(), deleted);
+                break;
+            }
+        }
+
+        if (moves.isEmpty())
+            return new ArrayList<>(transformations);
+
+        // a move costs as much as the operations it replaces
+        Map<TreeNode, Integer> costs = new IdentityHashMap<>();
+        for (Map.Entry<TreeNode, TreeNode> move : moves.entrySet()) {
+            List<TreeNode> deleted = new ArrayList<>(), inserted = new ArrayList<>();
+            collect(move.getValue(), null, deleted);
+            collect(move.getKey(), insertedChildren, inserted);
+
+            int cost = 0;
+            for (TreeNode node : deleted)
+                cost += deletes.get(node).getCost();
+
+            for (TreeNode node : inserted)
+                cost += inserts.get(node).getCost();
+
+            costs.put(move.getKey(), cost);
+        }
+
+        List<TreeTransformation> compacted = new ArrayList<>();
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() == TreeOperation.OP_DELETE_NODE && movedDeleted.contains(t.getFirstNode()))
+                continue;
+
+            if (t.getOperation() == TreeOperation.OP_INSERT_NODE && movedInserted.contains(t.getFirstNode())) {
+                if (!moves.containsKey(t.getFirstNode()))
+                    continue;
+
+                TreeTransformation move = new TreeTransformation(TreeOperation.OP_MOVE_SUBTREE,
+                        costs.get(t.getFirstNode()), moves.get(t.getFirstNode()), t.getSecondNode());
+                move.setPosition(t.getPosition());
+                move.setChildrenCount(t.getChildrenCount());
+                compacted.add(move);
+                continue;
+            }
+
+            compacted.add(t);
+        }
+
+        return compacted;
+    }
+
+    private static long combine(long hash, long child) {
+        hash = 31 * hash + child;
+        return hash ^ (hash >>> 29);
+    }
+
+    /**
+     * Returns the hash of node {@code node} alone, which is the hash of its label if {@code labeler} is not
+     * {@code null}.
+     */
+    private static long nodeShape(TreeNode node, Function<? super TreeNode, ?> labeler) {
+        return labeler == null ? 1L : combine(1L, Objects.hashCode(labeler.apply(node)));
+    }
+
+    /**
+     * Returns the children of node {@code node}: its inserted children from {@code insertedChildren}, or its
+     * children in the first tree if {@code insertedChildren} is {@code null}.
+     */
+    private static List<? extends TreeNode> children(TreeNode node, Map<TreeNode, List<TreeNode>> insertedChildren) {
+        if (insertedChildren == null)
+            return node.getChildren();
+
+        return insertedChildren.getOrDefault(node, Collections.emptyList());
+    }
+
+    /**
+     * Returns the shape of the subtree rooted at node {@code node} if all of its nodes are deleted, or {@code null}.
+     * The subtree is traversed in postorder with an explicit stack, remembering the shape of every visited node.
+     */
+    private static Long deletedShape(TreeNode node, Map<TreeNode, TreeTransformation> deletes,
+                                     Map<TreeNode, Long> shapes, Function<? super TreeNode, ?> labeler) {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            TreeNode top = stack.peek();
+            if (shapes.containsKey(top)) {
+                stack.pop();
+                continue;
+            }
+
+            if (!deletes.containsKey(top)) {
+                shapes.put(top, null);
+                stack.pop();
+                continue;
+            }
+
+            if (pushPending(top.getChildren(), shapes, stack))
+                continue;
+
+            stack.pop();
+            shapes.put(top, childShapes(nodeShape(top, labeler), top.getChildren(), shapes));
+        }
+
+        return shapes.get(node);
+    }
+
+    /**
+     * Returns the shape of the subtree rooted at inserted node {@code node} if all of its descendants are inserted,
+     * or {@code null}. The subtree is traversed as in {@link #deletedShape(TreeNode, Map, Map, Function)}.
+     */
+    private static Long insertedShape(TreeNode node, Map<TreeNode, TreeTransformation> inserts,
+                                      Map<TreeNode, List<TreeNode>> insertedChildren, Map<TreeNode, Long> shapes,
+                                      Function<? super TreeNode, ?> labeler) {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            TreeNode top = stack.peek();
+            if (shapes.containsKey(top)) {
+                stack.pop();
+                continue;
+            }
+
+            // existing nodes which are demoted below the inserted node are not part of the inserted subtree
+            boolean complete = true;
+            for (TreeNode descendant : inserts.get(top).getDescendants()) {
+                if (!inserts.containsKey(descendant))
+                    complete = false;
+            }
+
+            if (!complete) {
+                shapes.put(top, null);
+                stack.pop();
+                continue;
+            }
+
+            List<? extends TreeNode> children = children(top, insertedChildren);
+            if (pushPending(children, shapes, stack))
+                continue;
+
+            stack.pop();
+            shapes.put(top, childShapes(nodeShape(top, labeler), children, shapes));
+        }
+
+        return shapes.get(node);
+    }
+
+    /**
+     * Pushes the nodes of {@code children} without a known shape onto {@code stack}, returning whether there were any.
+     */
+    private static boolean pushPending(List<? extends TreeNode> children, Map<TreeNode, Long> shapes,
+                                       Deque<TreeNode> stack) {
+        boolean pending = false;
+        for (TreeNode child : children) {
+            if (!shapes.containsKey(child)) {
+                stack.push(child);
+                pending = true;
+            }
+        }
+
+        return pending;
+    }
+
+    /**
+     * Combines shape {@code shape} with the known shapes of {@code children}, or returns {@code null} if any of them
+     * is {@code null}.
+     */
+    private static Long childShapes(long shape, List<? extends TreeNode> children, Map<TreeNode, Long> shapes) {
+        for (TreeNode child : children) {
+            Long childShape = shapes.get(child);
+            if (childShape == null)
+                return null;
+
+            shape = combine(shape, childShape);
+        }
+
+        return shape;
+    }
+
+    private static boolean available(TreeNode deleted, Set<TreeNode> moved) {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(deleted);
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            if (moved.contains(node))
+                return false;
+
+            for (TreeNode child : node.getChildren())
+                stack.push(child);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns whether every node of the subtree rooted at node {@code first} can be renamed at zero cost into its
+     * counterpart in the subtree of the same shape rooted at node {@code second}. The children of both nodes are
+     * given as in {@link #children(TreeNode, Map)}.
+     */
+    private static boolean identical(TreeNode first, Map<TreeNode, List<TreeNode>> firstChildren, TreeNode second,
+                                     Map<TreeNode, List<TreeNode>> secondChildren) {
+        Deque<TreeNode[]> stack = new ArrayDeque<>();
+        stack.push(new TreeNode[]{first, second});
+        while (!stack.isEmpty()) {
+            TreeNode[] pair = stack.pop();
+            List<? extends TreeNode> children1 = children(pair[0], firstChildren),
+                    children2 = children(pair[1], secondChildren);
+            if (children1.size() != children2.size()
+                    || pair[0].getTransformationCost(TreeOperation.OP_RENAME_NODE, pair[1]) != 0)
+                return false;
+
+            for (int i = 0; i < children1.size(); i++)
+                stack.push(new TreeNode[]{children1.get(i), children2.get(i)});
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds all nodes of the subtree rooted at node {@code node} to {@code ref}, with children given as in
+     * {@link #children(TreeNode, Map)}.
+     */
+    private static void collect(TreeNode node, Map<TreeNode, List<TreeNode>> insertedChildren,
+                                Collection<TreeNode> ref) {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            TreeNode top = stack.pop();
+            ref.add(top);
+            for (TreeNode child : children(top, insertedChildren))
+                stack.push(child);
+        }
+    }
+}
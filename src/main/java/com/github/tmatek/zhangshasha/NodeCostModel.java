@@ -0,0 +1,34 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * A {@link LabelCostModel} over two {@link NodeIndex}es, which delegates to
+ * {@link TreeNode#getTransformationCost(TreeOperation, TreeNode)} of the indexed nodes. Labels are postorder IDs of
+ * the first tree for deletions and of the second tree for insertions.
+ */
+final class NodeCostModel implements LabelCostModel {
+
+    private final NodeIndex first, second;
+
+    NodeCostModel(NodeIndex first, NodeIndex second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public int deleteCost(int label) {
+        return this.first.node(label).getTransformationCost(TreeOperation.OP_DELETE_NODE, null);
+    }
+
+    @Override
+    public int insertCost(int label) {
+        // the parent is resolved through the index, so that the nodes need not know their parents
+        int parent = this.second.tree().getParent(label);
+        return this.second.node(label).getTransformationCost(TreeOperation.OP_INSERT_NODE,
+                parent == -1 ? null : this.second.node(parent));
+    }
+
+    @Override
+    public int renameCost(int from, int to) {
+        return this.first.node(from).getTransformationCost(TreeOperation.OP_RENAME_NODE, this.second.node(to));
+    }
+}
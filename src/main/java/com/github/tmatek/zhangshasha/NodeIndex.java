@@ -0,0 +1,68 @@
+package com.github.tmatek.zhangshasha;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The indexed form of a {@link TreeNode} tree, which keeps the original nodes. The label of every node of the
+ * indexed tree is its own postorder ID, so the costs of transformations can be resolved back to the nodes (see
+ * {@link NodeCostModel}).
+ */
+final class NodeIndex {
+
+    private final TreeNode[] nodes;
+
+    private final IndexedTree tree;
+
+    private NodeIndex(TreeNode[] nodes, IndexedTree tree) {
+        this.nodes = nodes;
+        this.tree = tree;
+    }
+
+    /**
+     * Indexes the tree given by the root node {@code root}.
+     * @param root the root of the tree structure
+     * @return the indexed form of the tree
+     */
+    static NodeIndex of(TreeNode root) {
+        List<TreeNode> visited = new ArrayList<>();
+        IndexedTree preorder = IndexedTree.of(root, node -> {
+            visited.add(node);
+            return visited.size() - 1;
+        });
+
+        // nodes are labelled in the order of visiting, relabel them with postorder IDs
+        int n = preorder.size();
+        TreeNode[] nodes = new TreeNode[n];
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = visited.get(preorder.getLabel(i));
+            labels[i] = i;
+        }
+
+        return new NodeIndex(nodes, new IndexedTree(IntBuffer.wrap(labels), preorder.leftmostLeaves(),
+                preorder.parents(), preorder.keyroots()));
+    }
+
+    /**
+     * Returns the node with postorder ID {@code id}.
+     * @param id the postorder ID of the node
+     * @return the tree node
+     */
+    TreeNode node(int id) {
+        return this.nodes[id];
+    }
+
+    /**
+     * Returns the indexed tree, whose labels are postorder IDs.
+     * @return the indexed tree
+     */
+    IndexedTree tree() {
+        return this.tree;
+    }
+
+    int size() {
+        return this.nodes.length;
+    }
+}
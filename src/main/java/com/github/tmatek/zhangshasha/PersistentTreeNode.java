@@ -0,0 +1,32 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.List;
+
+/**
+ * An immutable node belonging to a persistent tree structure. Persistent trees are never modified; every change
+ * creates new nodes on the path from the changed node to the root, while all unchanged subtrees are shared with the
+ * original tree. Many versions of a tree can thus be kept at the cost of their changed nodes only.
+ * <br><br>
+ * As a node may be shared by several trees, it cannot know its parent and {@link #getParent()} should return
+ * {@code null}. The nodes of a single tree must be distinct objects, since transformations refer to nodes by their
+ * references.
+ * @see TreeDistance#transformTree(PersistentTreeNode, List)
+ */
+public interface PersistentTreeNode extends TreeNode {
+
+    /**
+     * Returns a new node with the label of this node and children <code>children</code>. This node is not changed.
+     * @param children the children of the new node
+     * @return a new node with the given children
+     */
+    PersistentTreeNode withChildren(List<PersistentTreeNode> children);
+
+    /**
+     * Returns a node with the children of this node and the label of <code>other</code>, or this node if both labels
+     * are equal. This node is not changed.
+     * @param other the node which provides the new label
+     * @return a node with the label of <code>other</code>
+     */
+    PersistentTreeNode withLabelOf(PersistentTreeNode other);
+
+}
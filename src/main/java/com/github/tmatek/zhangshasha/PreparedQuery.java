@@ -0,0 +1,170 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * An indexed tree prepared for calculating its tree distance to many candidate trees, e.g. one query tree compared
+ * against a stream of candidates. Everything which only depends on the query is calculated once: its mirror image
+ * used by the right path decomposition, the labels, leftmost leaf descendants and delete costs of its nodes and its
+ * keyroot work used for planning (see {@link DistancePlan}).
+ * <br><br>
+ * Every thread keeps its distance tables between calculations, grown to the largest candidate it has compared, so
+ * the tables are not allocated for every candidate. Only tables of at most {@link #getRetainedCells()} cells are kept;
+ * larger tables are allocated for a single calculation, so one large candidate does not pin memory on every thread
+ * which has compared it for as long as the query is used.
+ * <br><br>
+ * Candidates may be compared from several threads at once, e.g. from a parallel stream, in which case the cost model
+ * must be thread-safe. The distances are the same as calculated by
+ * {@link IndexedTreeDistance#treeDistance(IndexedTree, IndexedTree, LabelCostModel, DistanceOptions)}.
+ */
+public final class PreparedQuery {
+
+    /**
+     * The default maximal number of cells of the distance tables kept by every thread between calculations.
+     */
+    public static final long DEFAULT_RETAINED_CELLS = 1L << 22;
+
+    private final IndexedTree query;
+
+    private final LabelCostModel costs;
+
+    private final DistanceOptions options;
+
+    // the nodes of the query and of its mirror image
+    private final TreeDistanceComputation.NodeCosts left, right;
+
+    private final long leftWork, rightWork;
+
+    private long retainedCells = DEFAULT_RETAINED_CELLS;
+
+    private final ThreadLocal<TreeDistanceComputation.Workspace> workspaces =
+            ThreadLocal.withInitial(TreeDistanceComputation.Workspace::new);
+
+    /**
+     * Prepares query {@code query} with default options.
+     *
+     * @param query the query tree, which is the first tree of every comparison
+     * @param costs the transformation costs for node labels
+     * @throws IllegalArgumentException if {@code query} or {@code costs} is {@code null}
+     */
+    public PreparedQuery(IndexedTree query, LabelCostModel costs) {
+        this(query, costs, new DistanceOptions());
+    }
+
+    /**
+     * Prepares query {@code query} with options {@code options}.
+     *
+     * @param query   the query tree, which is the first tree of every comparison
+     * @param costs   the transformation costs for node labels
+     * @param options the options of every calculation
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     */
+    public PreparedQuery(IndexedTree query, LabelCostModel costs, DistanceOptions options) {
+        if (query == null || costs == null || options == null)
+            throw new IllegalArgumentException("The query tree, the cost model and the options must not be null");
+
+        this.query = query;
+        this.costs = costs;
+        this.options = options;
+        this.left = TreeDistanceComputation.NodeCosts.deleted(query, costs);
+        this.right = TreeDistanceComputation.NodeCosts.deleted(query.mirror(), costs);
+        this.leftWork = DistanceEstimate.keyrootWork(query, Decomposition.LEFT);
+        this.rightWork = DistanceEstimate.keyrootWork(query, Decomposition.RIGHT);
+    }
+
+    public IndexedTree getQuery() {
+        return this.query;
+    }
+
+    public long getRetainedCells() {
+        return this.retainedCells;
+    }
+
+    /**
+     * Sets the maximal number of cells of the distance tables every thread keeps between calculations. Candidates
+     * needing larger tables are compared with tables allocated for their calculation only. Use 0 to never keep
+     * tables.
+     *
+     * @param retainedCells the maximal number of cells of kept tables
+     * @throws IllegalArgumentException if {@code retainedCells} is negative
+     */
+    public void setRetainedCells(long retainedCells) {
+        if (retainedCells < 0)
+            throw new IllegalArgumentException("The number of retained cells must not be negative");
+
+        this.retainedCells = retainedCells;
+    }
+
+    /**
+     * Returns the number of cells of the tree distance table kept by the calling thread.
+     */
+    long retainedTableCells() {
+        return this.workspaces.get().tableCells();
+    }
+
+    /**
+     * Calculates the tree distance between the query and tree {@code candidate}.
+     *
+     * @param candidate the second tree structure
+     * @return the tree distance between the query and {@code candidate}
+     * @throws IllegalArgumentException if {@code candidate} is {@code null}
+     */
+    public int treeDistance(IndexedTree candidate) {
+        if (candidate == null)
+            throw new IllegalArgumentException("The candidate tree must not be null");
+
+        DistancePlan plan = DistancePlan.of(this.query.size(), this.leftWork, this.rightWork, candidate, this.options);
+        plan.log();
+
+        // tables larger than the retained size are not kept
+        TreeDistanceComputation.Workspace workspace = (long) (this.query.size() + 1) * (candidate.size() + 1)
+                <= this.retainedCells ? this.workspaces.get() : null;
+
+        // the right decomposition is the left decomposition of mirrored trees
+        boolean mirrored = plan.getDecomposition() == Decomposition.RIGHT;
+        try (TreeDistanceComputation computation = new TreeDistanceComputation(mirrored ? this.right : this.left,
+                mirrored ? candidate.mirror() : candidate, this.costs, null, this.options, workspace)) {
+            return computation.run();
+        }
+    }
+
+    /**
+     * Calculates the tree distances between the query and every tree of {@code candidates}, in order.
+     *
+     * @param candidates the candidate trees
+     * @return the tree distance to every candidate
+     * @throws IllegalArgumentException if {@code candidates} or any of its trees is {@code null}
+     */
+    public int[] treeDistances(Iterable<IndexedTree> candidates) {
+        if (candidates == null)
+            throw new IllegalArgumentException("The candidate trees must not be null");
+
+        int[] distances = new int[16];
+        int count = 0;
+        for (IndexedTree candidate : candidates) {
+            if (count == distances.length)
+                distances = Arrays.copyOf(distances, 2 * count);
+
+            distances[count++] = treeDistance(candidate);
+        }
+
+        return Arrays.copyOf(distances, count);
+    }
+
+    /**
+     * Returns a stream of tree distances between the query and every tree of {@code candidates}, in the order of
+     * the candidates. The distances are calculated lazily, in parallel if {@code candidates} is a parallel stream.
+     *
+     * @param candidates the candidate trees
+     * @return the stream of tree distances to the candidates
+     * @throws IllegalArgumentException if {@code candidates} is {@code null}
+     */
+    public IntStream treeDistances(Stream<IndexedTree> candidates) {
+        if (candidates == null)
+            throw new IllegalArgumentException("The candidate trees must not be null");
+
+        return candidates.mapToInt(this::treeDistance);
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * Utility class with the data-parallel part of calculating a row of a forest distance table. For every cell, the
+ * minimum of inserting the row node and of combining a smaller forest distance with a tree distance does not depend
+ * on other cells of the row, so it is calculated in a single branch-free pass; only the deletion of the column node
+ * depends on the cell to the left and is applied afterwards.
+ * <br><br>
+ * This is the scalar implementation. Multi-release JARs contain another implementation for Java 17 and later, which
+ * uses the Vector API when module {@code jdk.incubator.vector} is present.
+ */
+final class RowKernel {
+
+    private RowKernel() {
+    }
+
+    /**
+     * Calculates {@code min(previous[j] + insert, forests[subforests[j]] + subtrees[j + offset])} into
+     * {@code current[j]} for all columns {@code j} in range [{@code from}, {@code to}).
+     *
+     * @param previous   the previous row of the forest distance table
+     * @param insert     the cost of inserting the row node
+     * @param forests    the row of the forest distance table of the forest preceding the row node's subtree
+     * @param subforests the columns of {@code forests} preceding the subtrees of column nodes
+     * @param subtrees   the tree distances of the row node's subtree
+     * @param offset     the difference between postorder IDs of column nodes and their columns
+     * @param current    the row being calculated
+     * @param from       the first column
+     * @param to         the column after the last one
+     */
+    static void relax(int[] previous, int insert, int[] forests, int[] subforests, int[] subtrees, int offset,
+                      int[] current, int from, int to) {
+        for (int j = from; j < to; j++)
+            current[j] = Math.min(previous[j] + insert, forests[subforests[j]] + subtrees[j + offset]);
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread-safe cache of distances between pairs of subtrees, shared by tree distance calculations on
+ * {@link IndexedTree}s (see {@link DistanceOptions#setCache(SubtreeDistanceCache)}). When trees share recurring
+ * subtrees, the distances between every pair of subtrees on the leftmost paths of two keyroots are looked up instead
+ * of calculating their forest distance table.
+ * <br><br>
+ * Entries are keyed by the structure and labels of both subtrees and by the {@link LabelCostModel} used, so trees
+ * compared through a cache should share the same labelling. Subtrees are compared exactly, not only by their hashes.
+ * The least recently used entries are evicted once the cache holds {@link #getCapacity()} entries. Pairs including
+ * the root of the first tree are never cached, as the root cannot be deleted.
+ */
+public final class SubtreeDistanceCache {
+
+    private final int capacity;
+
+    private final Map<Key, int[]> entries;
+
+    private long hits, misses, evictions;
+
+    /**
+     * Creates an empty cache holding at most {@code capacity} pairs of keyroot subtrees.
+     * @param capacity the maximal number of entries
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     */
+    public SubtreeDistanceCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("The capacity must be positive");
+
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Key, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, int[]> eldest) {
+                if (size() <= SubtreeDistanceCache.this.capacity)
+                    return false;
+
+                SubtreeDistanceCache.this.evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the distances between subtrees on the leftmost paths of both subtrees of {@code key}, ordered by
+     * postorder IDs of the second subtree's path and then of the first subtree's path, or {@code null} if the pair
+     * has not been cached.
+     */
+    synchronized int[] get(Key key) {
+        int[] distances = this.entries.get(key);
+        if (distances == null)
+            this.misses++;
+        else
+            this.hits++;
+
+        return distances;
+    }
+
+    synchronized void put(Key key, int[] distances) {
+        this.entries.put(key.detach(), distances);
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return this.hits;
+    }
+
+    public synchronized long getMissCount() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return this.evictions;
+    }
+
+    /**
+     * Removes all entries from this cache. The statistics are kept.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SubtreeDistanceCache[size=" + this.entries.size() + ", hits=" + this.hits + ", misses=" + this.misses
+                + ", evictions=" + this.evictions + "]";
+    }
+
+    /**
+     * The labels and leftmost leaf descendants of a subtree in postorder, relative to its first node. A subtree is
+     * either a view of an indexed tree, used for lookups, or a detached copy, held by the cache.
+     */
+    static final class Subtree {
+
+        private final IndexedTree tree;
+
+        private final int first, size, hash;
+
+        private final int[] labels, leftmostLeaves;
+
+        private Subtree(IndexedTree tree, int first, int size, int hash, int[] labels, int[] leftmostLeaves) {
+            this.tree = tree;
+            this.first = first;
+            this.size = size;
+            this.hash = hash;
+            this.labels = labels;
+            this.leftmostLeaves = leftmostLeaves;
+        }
+
+        static Subtree of(IndexedTree tree, int root) {
+            int first = tree.getLeftmostLeaf(root), hash = 1;
+            for (int k = first; k <= root; k++)
+                hash = 31 * (31 * hash + tree.getLabel(k)) + tree.getLeftmostLeaf(k) - first;
+
+            return new Subtree(tree, first, root - first + 1, hash, null, null);
+        }
+
+        private int label(int i) {
+            return this.labels != null ? this.labels[i] : this.tree.getLabel(this.first + i);
+        }
+
+        private int leftmostLeaf(int i) {
+            return this.leftmostLeaves != null ? this.leftmostLeaves[i]
+                    : this.tree.getLeftmostLeaf(this.first + i) - this.first;
+        }
+
+        private Subtree detach() {
+            if (this.labels != null)
+                return this;
+
+            int[] labels = new int[this.size], leftmostLeaves = new int[this.size];
+            for (int i = 0; i < this.size; i++) {
+                labels[i] = label(i);
+                leftmostLeaves[i] = leftmostLeaf(i);
+            }
+
+            return new Subtree(null, 0, this.size, this.hash, labels, leftmostLeaves);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Subtree))
+                return false;
+
+            Subtree other = (Subtree) o;
+            if (this.size != other.size || this.hash != other.hash)
+                return false;
+
+            for (int i = 0; i < this.size; i++) {
+                if (label(i) != other.label(i) || leftmostLeaf(i) != other.leftmostLeaf(i))
+                    return false;
+            }
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+
+    /**
+     * A pair of subtrees and the cost model of their distances.
+     */
+    static final class Key {
+
+        private final Subtree first, second;
+
+        private final LabelCostModel costs;
+
+        Key(Subtree first, Subtree second, LabelCostModel costs) {
+            this.first = first;
+            this.second = second;
+            this.costs = costs;
+        }
+
+        private Key detach() {
+            return new Key(this.first.detach(), this.second.detach(), this.costs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+
+            Key other = (Key) o;
+            return this.costs.equals(other.costs) && this.first.equals(other.first) && this.second.equals(other.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * this.first.hashCode() + this.second.hashCode()) + this.costs.hashCode();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * A subtree of a document tree together with its tree distance from a pattern tree, as found by
+ * {@link SubtreeSearch}.
+ */
+public final class SubtreeMatch implements Comparable<SubtreeMatch> {
+
+    private final int node, distance;
+
+    SubtreeMatch(int node, int distance) {
+        this.node = node;
+        this.distance = distance;
+    }
+
+    /**
+     * Returns the postorder ID of the root of the matched subtree in the document tree.
+     * @return the postorder ID of the root of the subtree
+     */
+    public int getNode() {
+        return this.node;
+    }
+
+    /**
+     * Returns the tree distance between the pattern tree and the subtree.
+     * @return the tree distance of the subtree
+     */
+    public int getDistance() {
+        return this.distance;
+    }
+
+    /**
+     * Orders matches by their distance and then by postorder IDs of their subtrees.
+     */
+    @Override
+    public int compareTo(SubtreeMatch o) {
+        int cmp = Integer.compare(this.distance, o.distance);
+        return cmp != 0 ? cmp : Integer.compare(this.node, o.node);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SubtreeMatch))
+            return false;
+
+        SubtreeMatch other = (SubtreeMatch) o;
+        return this.node == other.node && this.distance == other.distance;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.node + this.distance;
+    }
+
+    @Override
+    public String toString() {
+        return this.node + ": " + this.distance;
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Utility class for approximate subtree search: finding the subtrees of a large document tree which are closest to
+ * a small pattern tree. The Zhang-Shasha algorithm calculates the distances between all pairs of subtrees as a
+ * by-product, so the distances between the pattern and every subtree of the document are obtained in a single
+ * calculation, in the time of a single tree distance.
+ * <br><br>
+ * The distance of a subtree is the tree distance from the pattern to the subtree, i.e. the root of the pattern is
+ * never deleted (see {@link IndexedTreeDistance}).
+ */
+public final class SubtreeSearch {
+
+    private SubtreeSearch() {
+    }
+
+    /**
+     * Calculates the tree distance between pattern {@code pattern} and every subtree of document {@code document},
+     * passing each match to {@code consumer} as soon as its distance is known. Matches are not reported in postorder.
+     *
+     * @param pattern  the pattern tree structure
+     * @param document the document tree structure
+     * @param costs    the transformation costs for node labels
+     * @param consumer the consumer of subtree matches
+     * @throws IllegalArgumentException if any of the arguments is {@code null}
+     */
+    public static void forEachMatch(IndexedTree pattern, IndexedTree document, LabelCostModel costs,
+                                    Consumer<? super SubtreeMatch> consumer) {
+        if (pattern == null || document == null || costs == null || consumer == null)
+            throw new IllegalArgumentException("Both tree structures, the cost model and the consumer must not be null");
+
+        try (TreeDistanceComputation computation = new TreeDistanceComputation(pattern, document, costs, null, null)) {
+            computation.forEachRootDistance(consumer);
+        }
+    }
+
+    /**
+     * Returns the {@code k} subtrees of document {@code document} closest to pattern {@code pattern}, ordered by
+     * their distance. Only the best {@code k} matches are kept during the calculation.
+     *
+     * @param pattern  the pattern tree structure
+     * @param document the document tree structure
+     * @param costs    the transformation costs for node labels
+     * @param k        the number of matches to return
+     * @return at most {@code k} closest subtrees, ordered by their distance
+     * @throws IllegalArgumentException if {@code pattern}, {@code document} or {@code costs} is {@code null} or
+     *                                  {@code k} is negative
+     */
+    public static List<SubtreeMatch> bestMatches(IndexedTree pattern, IndexedTree document, LabelCostModel costs,
+                                                 int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("The number of matches must not be negative");
+
+        // the worst of the best matches is at the head of the queue
+        PriorityQueue<SubtreeMatch> best = new PriorityQueue<>(Math.max(1, k), Collections.reverseOrder());
+        forEachMatch(pattern, document, costs, match -> {
+            if (best.size() < k)
+                best.add(match);
+            else if (k > 0 && match.compareTo(best.peek()) < 0) {
+                best.poll();
+                best.add(match);
+            }
+        });
+
+        List<SubtreeMatch> matches = new ArrayList<>(best);
+        Collections.sort(matches);
+        return matches;
+    }
+}
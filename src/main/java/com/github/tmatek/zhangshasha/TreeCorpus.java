@@ -0,0 +1,283 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A compact in-memory collection of trees. Labels are interned into a {@link LabelDictionary} and identical subtrees
+ * are stored only once: the corpus is a hash-consed directed acyclic graph, in which every distinct subtree (a label
+ * and an ordered list of distinct child subtrees) is a single entry of a few integer arrays. Subtrees recurring within
+ * a tree or across trees therefore cost no additional memory.
+ * <br><br>
+ * Trees are expanded into {@link IndexedTree}s only when they are compared, which takes time linear in their size.
+ * Adding trees is not thread-safe, but trees already added may be read and compared from several threads.
+ */
+public final class TreeCorpus {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final LabelDictionary labels;
+
+    // distinct subtrees: labels, sizes and the range of their children in the edges array
+    private int[] nodeLabels = new int[INITIAL_CAPACITY], nodeSizes = new int[INITIAL_CAPACITY],
+            offsets = new int[INITIAL_CAPACITY + 1];
+
+    private int[] edges = new int[INITIAL_CAPACITY];
+
+    private int nodeCount, edgeCount;
+
+    // open-addressing hash table of distinct subtrees, holding their IDs increased by one, or zero for empty slots
+    private int[] table = new int[2 * INITIAL_CAPACITY];
+
+    private int[] roots = new int[INITIAL_CAPACITY];
+
+    private int treeCount;
+
+    private long totalNodeCount;
+
+    /**
+     * Creates an empty corpus with its own label dictionary.
+     */
+    public TreeCorpus() {
+        this(new LabelDictionary());
+    }
+
+    /**
+     * Creates an empty corpus interning labels into dictionary {@code labels}, which may be shared with other
+     * corpora.
+     *
+     * @param labels the dictionary of labels
+     * @throws IllegalArgumentException if {@code labels} is {@code null}
+     */
+    public TreeCorpus(LabelDictionary labels) {
+        if (labels == null)
+            throw new IllegalArgumentException("The label dictionary must not be null");
+
+        this.labels = labels;
+    }
+
+    public LabelDictionary getLabels() {
+        return this.labels;
+    }
+
+    /**
+     * Adds the tree given by the root node {@code root}, whose node labels are given by {@code labeler} and interned
+     * into the label dictionary of this corpus.
+     *
+     * @param root    the root of the tree structure
+     * @param labeler a function returning the label of a tree node
+     * @return the index of the added tree
+     * @throws IllegalArgumentException if {@code root} or {@code labeler} is {@code null}
+     */
+    public int add(TreeNode root, Function<? super TreeNode, String> labeler) {
+        if (root == null || labeler == null)
+            throw new IllegalArgumentException("The tree structure and the labeler must not be null");
+
+        return add(IndexedTree.of(root, node -> this.labels.intern(labeler.apply(node))));
+    }
+
+    /**
+     * Adds indexed tree {@code tree}. Its labels are stored as they are, so they should be IDs of the label
+     * dictionary of this corpus.
+     *
+     * @param tree the tree structure
+     * @return the index of the added tree
+     * @throws IllegalArgumentException if {@code tree} is {@code null}
+     */
+    public int add(IndexedTree tree) {
+        if (tree == null)
+            throw new IllegalArgumentException("The tree structure must not be null");
+
+        // subtrees completed so far whose parents have not completed yet, and their postorder IDs
+        int n = tree.size(), top = 0;
+        int[] subtrees = new int[n], ids = new int[n];
+
+        for (int j = 0; j < n; j++) {
+            // the children of a node are the last completed subtrees
+            int first = top;
+            while (first > 0 && tree.getParent(ids[first - 1]) == j)
+                first--;
+
+            subtrees[first] = intern(tree.getLabel(j), subtrees, first, top);
+            ids[first] = j;
+            top = first + 1;
+        }
+
+        if (this.treeCount == this.roots.length)
+            this.roots = Arrays.copyOf(this.roots, 2 * this.treeCount);
+
+        this.roots[this.treeCount] = subtrees[0];
+        this.totalNodeCount += n;
+        return this.treeCount++;
+    }
+
+    /**
+     * Returns the ID of the distinct subtree with label {@code label} and children {@code children[from, to)},
+     * adding it if it is not stored yet.
+     */
+    private int intern(int label, int[] children, int from, int to) {
+        int mask = this.table.length - 1;
+        for (int slot = hash(label, children, from, to) & mask; ; slot = (slot + 1) & mask) {
+            int id = this.table[slot] - 1;
+            if (id == -1) {
+                id = store(label, children, from, to);
+                this.table[slot] = id + 1;
+                if (2 * this.nodeCount > this.table.length)
+                    rehash();
+
+                return id;
+            }
+
+            if (this.nodeLabels[id] == label && equalChildren(id, children, from, to))
+                return id;
+        }
+    }
+
+    private int store(int label, int[] children, int from, int to) {
+        int id = this.nodeCount, count = to - from;
+        if (id == this.nodeLabels.length) {
+            this.nodeLabels = Arrays.copyOf(this.nodeLabels, 2 * id);
+            this.nodeSizes = Arrays.copyOf(this.nodeSizes, 2 * id);
+            this.offsets = Arrays.copyOf(this.offsets, 2 * id + 1);
+        }
+
+        if (this.edgeCount + count > this.edges.length)
+            this.edges = Arrays.copyOf(this.edges, Math.max(2 * this.edges.length, this.edgeCount + count));
+
+        int size = 1;
+        for (int c = from; c < to; c++)
+            size += this.nodeSizes[children[c]];
+
+        System.arraycopy(children, from, this.edges, this.edgeCount, count);
+        this.edgeCount += count;
+        this.nodeLabels[id] = label;
+        this.nodeSizes[id] = size;
+        this.offsets[id + 1] = this.edgeCount;
+        this.nodeCount++;
+        return id;
+    }
+
+    private boolean equalChildren(int id, int[] children, int from, int to) {
+        int offset = this.offsets[id];
+        if (this.offsets[id + 1] - offset != to - from)
+            return false;
+
+        for (int c = from; c < to; c++) {
+            if (this.edges[offset + c - from] != children[c])
+                return false;
+        }
+
+        return true;
+    }
+
+    private void rehash() {
+        this.table = new int[2 * this.table.length];
+        int mask = this.table.length - 1;
+        for (int id = 0; id < this.nodeCount; id++) {
+            int slot = hash(this.nodeLabels[id], this.edges, this.offsets[id], this.offsets[id + 1]) & mask;
+            while (this.table[slot] != 0)
+                slot = (slot + 1) & mask;
+
+            this.table[slot] = id + 1;
+        }
+    }
+
+    private static int hash(int label, int[] children, int from, int to) {
+        int hash = label;
+        for (int c = from; c < to; c++)
+            hash = 31 * hash + children[c];
+
+        // spread the bits, as slots are taken from the lowest bits
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns the tree with index {@code index} in its indexed form.
+     *
+     * @param index the index of the tree
+     * @return the indexed tree
+     * @throws IndexOutOfBoundsException if there is no tree with index {@code index}
+     */
+    public IndexedTree getTree(int index) {
+        if (index < 0 || index >= this.treeCount)
+            throw new IndexOutOfBoundsException("No tree with index " + index);
+
+        int root = this.roots[index], n = this.nodeSizes[root], count = 0, top = 0;
+        int[] labels = new int[n], lmld = new int[n];
+
+        // iterative depth-first traversal of the graph, so that deep trees do not overflow the call stack
+        int[] subtrees = new int[n], next = new int[n];
+        subtrees[top] = root;
+        next[top++] = 0;
+
+        while (top > 0) {
+            int subtree = subtrees[top - 1], child = this.offsets[subtree] + next[top - 1];
+            if (child < this.offsets[subtree + 1]) {
+                next[top - 1]++;
+                subtrees[top] = this.edges[child];
+                next[top++] = 0;
+            } else {
+                // the leftmost leaf descendant is the first node of the subtree in postorder
+                labels[count] = this.nodeLabels[subtree];
+                lmld[count] = count - this.nodeSizes[subtree] + 1;
+                count++;
+                top--;
+            }
+        }
+
+        return IndexedTree.fromPostorder(labels, lmld, n);
+    }
+
+    /**
+     * Calculates the tree distance between the trees with indices {@code first} and {@code second}.
+     *
+     * @param first  the index of the first tree
+     * @param second the index of the second tree
+     * @param costs  the transformation costs for node labels
+     * @return the tree distance between both trees
+     * @throws IllegalArgumentException if {@code costs} is {@code null}
+     * @throws IndexOutOfBoundsException if there is no tree with either index
+     */
+    public int treeDistance(int first, int second, LabelCostModel costs) {
+        return IndexedTreeDistance.treeDistance(getTree(first), getTree(second), costs);
+    }
+
+    /**
+     * Returns the number of nodes of the tree with index {@code index}.
+     *
+     * @param index the index of the tree
+     * @return the number of nodes of the tree
+     * @throws IndexOutOfBoundsException if there is no tree with index {@code index}
+     */
+    public int getTreeSize(int index) {
+        if (index < 0 || index >= this.treeCount)
+            throw new IndexOutOfBoundsException("No tree with index " + index);
+
+        return this.nodeSizes[this.roots[index]];
+    }
+
+    /**
+     * Returns the number of trees in this corpus.
+     * @return the number of trees
+     */
+    public int size() {
+        return this.treeCount;
+    }
+
+    /**
+     * Returns the number of distinct subtrees stored, which is the number of nodes actually held in memory.
+     * @return the number of stored subtrees
+     */
+    public int getStoredNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * Returns the total number of nodes of all trees in this corpus.
+     * @return the total number of nodes
+     */
+    public long getTotalNodeCount() {
+        return this.totalNodeCount;
+    }
+}
@@ -1,13 +1,14 @@
 package com.github.tmatek.zhangshasha;
 
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * Utility class for calculating the tree distance between two tree structures.
  */
 public final class TreeDistance {
 
-    private static final int HIGH_COST = 100000;
+    static final int HIGH_COST = 100000;
 
     private TreeDistance() {
     }
@@ -165,7 +166,30 @@ public final class TreeDistance {
      * @return the tree distance between {@code t1} and {@code t2}
      */
     public static int treeDistanceZhangShasha(TreeNode t1, TreeNode t2) {
-        return treeDistanceZhangShasha(t1, t2, null);
+        // unlike an explicit budget, the calculation is not cancelled by interrupting the calling thread
+        return treeDistanceZhangShasha(t1, t2, DistanceBudget.uninterruptible()).getDistance();
+    }
+
+    /**
+     * Calculates the tree distance between tree {@code t1} and {@code t2} within budget {@code budget}. The budget
+     * is checked cooperatively during the calculation; once it is exhausted, the best upper bound of the tree
+     * distance found so far is returned instead of the exact tree distance (see
+     * {@link IndexedTreeDistance#treeDistance(IndexedTree, IndexedTree, LabelCostModel, DistanceBudget)}).
+     *
+     * @param t1     the first tree structure
+     * @param t2     the second tree structure
+     * @param budget the budget of the calculation
+     * @throws IllegalArgumentException if {@code t1}, {@code t2} or {@code budget} is {@code null}.
+     * @throws java.util.concurrent.CancellationException if the calculation has been cancelled
+     * @return the tree distance between {@code t1} and {@code t2}, or its upper bound
+     */
+    public static DistanceResult treeDistanceZhangShasha(TreeNode t1, TreeNode t2, DistanceBudget budget) {
+        if (t1 == null || t2 == null)
+            throw new IllegalArgumentException("Both tree structures must not be null");
+
+        // the distance alone does not need node references, so it is calculated on indexed trees
+        NodeIndex first = NodeIndex.of(t1), second = NodeIndex.of(t2);
+        return IndexedTreeDistance.treeDistance(first.tree(), second.tree(), new NodeCostModel(first, second), budget);
     }
 
     /**
@@ -191,12 +215,71 @@ public final class TreeDistance {
      * @return a list of tree transformations required to transform first tree into the second
      */
     public static List<TreeTransformation> treeDistanceZhangShasha(EditableTreeNode t1, EditableTreeNode t2) {
+        return budgetedEditScript(t1, t2, null);
+    }
+
+    /**
+     * Calculates the list of tree transformations required to transform tree {@code t1} to {@code t2}, as
+     * {@link #treeDistanceZhangShasha(EditableTreeNode, EditableTreeNode)}, with path decomposition
+     * {@code decomposition}. The right decomposition is more efficient for trees whose subtrees grow towards the
+     * right (see {@link DistancePlan}); both decompositions give lists with the same sum of costs.
+     *
+     * @param t1            the first tree structure
+     * @param t2            the second tree structure
+     * @param decomposition the path decomposition, or {@code null} to choose the cheaper one for both trees
+     * @throws IllegalArgumentException if {@code t1} or {@code t2} is {@code null}.
+     * @return a list of tree transformations required to transform first tree into the second
+     */
+    public static List<TreeTransformation> editScript(EditableTreeNode t1, EditableTreeNode t2,
+                                                      Decomposition decomposition) {
+        if (t1 == null || t2 == null)
+            throw new IllegalArgumentException("Both tree structures must not be null");
+
+        NodeIndex first = NodeIndex.of(t1), second = NodeIndex.of(t2);
+        NodeCostModel costs = new NodeCostModel(first, second);
+
+        DistanceOptions options = new DistanceOptions();
+        options.setDecomposition(decomposition);
+
+        int[] mapping = IndexedTreeDistance.mapping(first.tree(), second.tree(), costs, options);
+        return EditScripts.fromMapping(first, second, mapping, costs);
+    }
+
+    /**
+     * Calculates the list of tree transformations required to transform persistent tree {@code t1} to {@code t2},
+     * as {@link #treeDistanceZhangShasha(EditableTreeNode, EditableTreeNode)}. The transformations are applied by
+     * {@link #transformTree(PersistentTreeNode, List)}, which leaves {@code t1} unchanged.
+     *
+     * @param t1 the first tree structure
+     * @param t2 the second tree structure
+     * @throws IllegalArgumentException if {@code t1} or {@code t2} is {@code null}.
+     * @return a list of tree transformations required to transform first tree into the second
+     */
+    public static List<TreeTransformation> treeDistanceZhangShasha(PersistentTreeNode t1, PersistentTreeNode t2) {
+        if (t1 == null || t2 == null)
+            throw new IllegalArgumentException("Both tree structures must not be null");
+
+        NodeIndex first = NodeIndex.of(t1), second = NodeIndex.of(t2);
+        NodeCostModel costs = new NodeCostModel(first, second);
+
+        int[] mapping = IndexedTreeDistance.mapping(first.tree(), second.tree(), costs, new DistanceOptions());
+        return EditScripts.fromMapping(first, second, mapping, costs);
+    }
+
+    /**
+     * Calculates the list of tree transformations required to transform tree {@code t1} to {@code t2}, charging
+     * every calculated column of forest distances to {@code budget}, which may be {@code null}.
+     * @throws java.util.concurrent.CancellationException if the calculation has been cancelled
+     */
+    static List<TreeTransformation> budgetedEditScript(EditableTreeNode t1, EditableTreeNode t2,
+                                                       DistanceBudget budget) {
         List<TreeTransformation> transformations = new ArrayList<>();
-        treeDistanceZhangShasha(t1, t2, transformations);
+        treeDistanceZhangShasha(t1, t2, transformations, budget);
         return transformations;
     }
 
-    private static int treeDistanceZhangShasha(TreeNode t1, TreeNode t2, List<TreeTransformation> transformations) {
+    private static int treeDistanceZhangShasha(TreeNode t1, TreeNode t2, List<TreeTransformation> transformations,
+                                               DistanceBudget budget) {
 
         if (t1 == null || t2 == null)
             throw new IllegalArgumentException("Both tree structures must not be null");
@@ -219,7 +302,7 @@ public final class TreeDistance {
         // calculate tree distance
         for (TreeNode keyRoot1 : keyRoots1) {
             for (TreeNode keyRoot2 : keyRoots2) {
-                forestDistance(keyRoot1, keyRoot2, lmld1, lmld2, postorder1, postorder2, treeDistance);
+                forestDistance(keyRoot1, keyRoot2, lmld1, lmld2, postorder1, postorder2, treeDistance, budget);
             }
         }
 
@@ -350,7 +433,8 @@ public final class TreeDistance {
 
     private static void forestDistance(TreeNode keyRoot1, TreeNode keyRoot2, TreeNode[] lmld1, TreeNode[] lmld2,
                                        ReversibleIdentityMap<TreeNode, Integer> postorder1,
-                                       ReversibleIdentityMap<TreeNode, Integer> postorder2, ForestTrail[][] treeDist) {
+                                       ReversibleIdentityMap<TreeNode, Integer> postorder2, ForestTrail[][] treeDist,
+                                       DistanceBudget budget) {
 
         int kr1 = postorder1.get(keyRoot1),
                 kr2 = postorder2.get(keyRoot2);
@@ -383,6 +467,9 @@ public final class TreeDistance {
 
         // fill in the rest of forest distances
         for (int k = lm1, j = 1; k <= kr1; k++, j++) {
+            if (budget != null)
+                budget.charge(bound2 - 1);
+
             for (int l = lm2, i = 1; l <= kr2; l++, i++) {
                 TreeNode first = postorder1.getInverse(k);
                 TreeNode second = postorder2.getInverse(l);
@@ -432,9 +519,19 @@ public final class TreeDistance {
      * @return the transformed tree
      */
     public static EditableTreeNode transformTree(EditableTreeNode root, List<TreeTransformation> transformations) {
+        // moved subtrees are detached first, as if they had been deleted together with the other deleted nodes
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() == TreeOperation.OP_MOVE_SUBTREE) {
+                EditableTreeNode moved = (EditableTreeNode) t.getFirstNode();
+                ((EditableTreeNode) moved.getParent()).deleteChild(moved);
+                moved.setParent(null);
+            }
+        }
+
         for (TreeTransformation t : transformations) {
             switch (t.getOperation()) {
                 case OP_INSERT_NODE:
+                case OP_MOVE_SUBTREE:
 
                     if (t.getSecondNode() == null) {
                         // insert a new root node
@@ -494,5 +591,60 @@ public final class TreeDistance {
         return root;
     }
 
-}
+    /**
+     * Compacts the list of tree transformations {@code transformations}, which have not been applied yet, by replacing
+     * the deletes of all nodes of a subtree and the inserts of all nodes of an identical subtree (every node renamed
+     * at zero cost) by a single {@link TreeOperation#OP_MOVE_SUBTREE}. The cost of a move is the sum of the costs of
+     * the operations it replaces, so the total cost is unchanged. The compacted transformations are applied with
+     * {@code transformTree} like the original ones and yield the same tree; the moved nodes are kept instead of
+     * being replaced by clones.
+     *
+     * @param transformations the list of transformations
+     * @throws IllegalArgumentException if {@code transformations} is {@code null}.
+     * @return the compacted list of transformations
+     */
+    public static List<TreeTransformation> compactMoves(List<TreeTransformation> transformations) {
+        if (transformations == null)
+            throw new IllegalArgumentException("The transformations must not be null");
 
+        return MoveCompaction.compact(transformations, null);
+    }
+
+    /**
+     * Compacts the list of tree transformations {@code transformations} as in {@link #compactMoves(List)}, grouping
+     * candidate subtrees by the labels of their nodes given by {@code labeler}, which must return equal labels for
+     * nodes renamed at zero cost. Without labels, subtrees of the same shape with many different labels are compared
+     * pairwise.
+     *
+     * @param transformations the list of transformations
+     * @param labeler         a function returning the label of a tree node, compared by {@code equals}
+     * @throws IllegalArgumentException if {@code transformations} or {@code labeler} is {@code null}.
+     * @return the compacted list of transformations
+     */
+    public static List<TreeTransformation> compactMoves(List<TreeTransformation> transformations,
+                                                        Function<? super TreeNode, ?> labeler) {
+        if (transformations == null || labeler == null)
+            throw new IllegalArgumentException("The transformations and the labeler must not be null");
+
+        return MoveCompaction.compact(transformations, labeler);
+    }
+
+    /**
+     * Applies the list of tree transformations {@code transformations}, obtained by
+     * {@link #treeDistanceZhangShasha(PersistentTreeNode, PersistentTreeNode)}, to the persistent tree given by root
+     * node {@code root}. The tree is not changed: a new tree is returned, which shares every subtree untouched by
+     * the transformations with {@code root}, so keeping both versions costs memory proportional to the changes only.
+     *
+     * @param root            the root of the tree structure being transformed
+     * @param transformations the list of transformations
+     * @throws IllegalArgumentException if {@code root} or {@code transformations} is {@code null}.
+     * @return the root of the transformed tree
+     */
+    public static PersistentTreeNode transformTree(PersistentTreeNode root, List<TreeTransformation> transformations) {
+        if (root == null || transformations == null)
+            throw new IllegalArgumentException("The tree structure and the transformations must not be null");
+
+        return DraftTree.transform(root, transformations);
+    }
+
+}
@@ -0,0 +1,494 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * A single calculation of the Zhang-Shasha tree distance between two {@link IndexedTree}s, holding the integer
+ * distance tables. Every forest distance table is filled in tiles; small tables form a single tile, while large
+ * tables are filled in parallel wavefronts of tiles along anti-diagonals (see {@link DistanceOptions}). Every cell is
+ * calculated in the same way in both cases, so the results are identical.
+ * <br><br>
+ * Large tables are held off the heap (see {@link IntTable}); the computation must then be closed to release them.
+ */
+final class TreeDistanceComputation implements AutoCloseable {
+
+    private final IndexedTree t1, t2;
+
+    // labels, leftmost leaf descendants and delete or insert costs of all nodes of both trees
+    private final NodeCosts nodes1, nodes2;
+
+    private final LabelCostModel costs;
+
+    private final DistanceBudget budget;
+
+    private final DistanceOptions options;
+
+    // rows are indexed by nodes of the second tree, columns by nodes of the first tree
+    private final IntTable treeDist, forestDist;
+
+    // per-thread copies of the previous and current rows, the preceding forests row and the subtrees row, used to
+    // access off-heap tables; null if both tables are on the heap
+    private final ThreadLocal<int[][]> scratch;
+
+    // costs and labels of the columns and rows of the current forest distance table, the columns of the forests
+    // preceding the subtrees of column nodes and the leftmost leaf descendants of row nodes
+    private final int[] deleteCosts, labels1, subforests1, insertCosts, labels2, leftmost2;
+
+    // columns of nodes on the leftmost path of the current first keyroot, i.e. columns of whole subtrees
+    private final int[] pathColumns;
+
+    private int pathCount;
+
+    // keyroots of the current forest distance table and their leftmost leaf descendants
+    private int kr1, kr2, lm1, lm2;
+
+    /**
+     * @param budget  the budget charged for every calculated row of cells, or {@code null}
+     * @param options the options of the calculation, or {@code null} for defaults
+     */
+    TreeDistanceComputation(IndexedTree t1, IndexedTree t2, LabelCostModel costs, DistanceBudget budget,
+                            DistanceOptions options) {
+        this(NodeCosts.deleted(t1, costs), t2, costs, budget, options, null);
+    }
+
+    /**
+     * @param nodes1    the nodes of the first tree, prepared by {@link NodeCosts#deleted}
+     * @param budget    the budget charged for every calculated row of cells, or {@code null}
+     * @param options   the options of the calculation, or {@code null} for defaults
+     * @param workspace the tables and arrays reused from previous computations of the calling thread, or
+     *                  {@code null} to allocate new ones
+     */
+    TreeDistanceComputation(NodeCosts nodes1, IndexedTree t2, LabelCostModel costs, DistanceBudget budget,
+                            DistanceOptions options, Workspace workspace) {
+        this.t1 = nodes1.tree;
+        this.t2 = t2;
+        this.nodes1 = nodes1;
+        this.nodes2 = NodeCosts.inserted(t2, costs);
+        this.costs = costs;
+        this.budget = budget;
+        this.options = options == null ? new DistanceOptions() : options;
+
+        int n1 = this.t1.size(), n2 = t2.size();
+
+        // off-heap tables are never kept, as they are only used for the largest trees
+        boolean heap = (long) (n1 + 1) * (n2 + 1) < this.options.getOffHeapThreshold();
+        if (workspace != null && heap) {
+            workspace.reserveTables(n1, n2);
+            this.treeDist = workspace.treeDist;
+            this.forestDist = workspace.forestDist;
+        } else {
+            this.treeDist = IntTable.allocate(n2, n1, this.options);
+            try {
+                this.forestDist = IntTable.allocate(n2 + 1, n1 + 1, this.options);
+            } catch (RuntimeException e) {
+                this.treeDist.close();
+                throw e;
+            }
+        }
+
+        Workspace arrays = workspace == null ? new Workspace() : workspace;
+        arrays.reserveArrays(n1, n2);
+        this.scratch = this.treeDist.isOffHeap() || this.forestDist.isOffHeap()
+                ? ThreadLocal.withInitial(() -> new int[4][n1 + 1]) : null;
+        this.deleteCosts = arrays.deleteCosts;
+        this.labels1 = arrays.labels1;
+        this.subforests1 = arrays.subforests1;
+        this.pathColumns = arrays.pathColumns;
+        this.insertCosts = arrays.insertCosts;
+        this.leftmost2 = arrays.leftmost2;
+        this.labels2 = arrays.labels2;
+    }
+
+    /**
+     * Calculates the distances between all relevant pairs of subtrees and returns the tree distance.
+     * @return the tree distance between both trees
+     */
+    int run() {
+        SubtreeDistanceCache cache = this.options.getCache();
+        SubtreeDistanceCache.Subtree[] subtrees1 = cache == null ? null : subtrees(this.t1),
+                subtrees2 = cache == null ? null : subtrees(this.t2);
+
+        for (int i = 0; i < this.t1.getKeyrootCount(); i++) {
+            for (int j = 0; j < this.t2.getKeyrootCount(); j++) {
+                int keyRoot1 = this.t1.getKeyroot(i), keyRoot2 = this.t2.getKeyroot(j);
+
+                // distances to the root of the first tree depend on the whole tree and are never cached
+                if (cache == null || keyRoot1 == this.t1.getRoot()) {
+                    forestDistance(keyRoot1, keyRoot2);
+                    continue;
+                }
+
+                SubtreeDistanceCache.Key key = new SubtreeDistanceCache.Key(subtrees1[i], subtrees2[j], this.costs);
+                int[] path1 = leftmostPath(this.t1, keyRoot1), path2 = leftmostPath(this.t2, keyRoot2);
+                int[] distances = cache.get(key);
+
+                if (distances == null) {
+                    forestDistance(keyRoot1, keyRoot2);
+
+                    distances = new int[path1.length * path2.length];
+                    for (int l = 0; l < path2.length; l++) {
+                        for (int k = 0; k < path1.length; k++)
+                            distances[l * path1.length + k] = this.treeDist.get(path2[l], path1[k]);
+                    }
+
+                    cache.put(key, distances);
+                } else {
+                    for (int l = 0; l < path2.length; l++) {
+                        for (int k = 0; k < path1.length; k++)
+                            this.treeDist.set(path2[l], path1[k], distances[l * path1.length + k]);
+                    }
+                }
+            }
+        }
+
+        return this.treeDist.get(this.t2.size() - 1, this.t1.size() - 1);
+    }
+
+    /**
+     * Recovers an optimal mapping between the nodes of both trees from the tree distance table, which must have
+     * been calculated by {@link #run()}. Forest distance tables are recalculated for every pair of subtrees whose
+     * roots are matched in a larger forest, starting with both roots, and traced back.
+     *
+     * @return the postorder ID of the node of the second tree mapped to every node of the first tree, or -1
+     */
+    int[] mapping() {
+        int[] mapping = new int[this.t1.size()];
+        Arrays.fill(mapping, -1);
+
+        // pairs of subtrees still to be traced back; their roots in the first tree are distinct
+        int[] stack1 = new int[this.t1.size()], stack2 = new int[this.t1.size()];
+        int top = 0;
+        stack1[top] = this.t1.getRoot();
+        stack2[top++] = this.t2.getRoot();
+
+        while (top > 0) {
+            top--;
+            int root1 = stack1[top], root2 = stack2[top];
+            forestDistance(root1, root2);
+
+            int i = root2 - this.lm2 + 1, j = root1 - this.lm1 + 1;
+            while (i > 0 || j > 0) {
+                int distance = this.forestDist.get(i, j);
+
+                if (i > 0 && distance == this.forestDist.get(i - 1, j) + this.insertCosts[i])
+                    i--;
+                else if (j > 0 && distance == this.forestDist.get(i, j - 1) + this.deleteCosts[j])
+                    j--;
+                else if (this.subforests1[j] == 0 && this.leftmost2[i] == this.lm2) {
+                    // both nodes present whole trees and are matched
+                    mapping[this.lm1 + j - 1] = this.lm2 + i - 1;
+                    i--;
+                    j--;
+                } else {
+                    // the subtrees of both nodes are matched, the preceding forests are traced back further
+                    stack1[top] = this.lm1 + j - 1;
+                    stack2[top++] = this.lm2 + i - 1;
+
+                    int forest2 = this.leftmost2[i] - this.lm2;
+                    j = this.subforests1[j];
+                    i = forest2;
+                }
+            }
+        }
+
+        return mapping;
+    }
+
+    /**
+     * Calculates the distances between the whole first tree and every subtree of the second tree, passing them to
+     * {@code consumer}. Keyroots of the second tree are processed in the outer loop, so the distances of subtrees
+     * on the leftmost path of a keyroot are known once its table with the root of the first tree is completed.
+     */
+    void forEachRootDistance(Consumer<? super SubtreeMatch> consumer) {
+        int root1 = this.t1.getRoot();
+        for (int j = 0; j < this.t2.getKeyrootCount(); j++) {
+            int keyRoot2 = this.t2.getKeyroot(j);
+            for (int i = 0; i < this.t1.getKeyrootCount(); i++)
+                forestDistance(this.t1.getKeyroot(i), keyRoot2);
+
+            for (int l : leftmostPath(this.t2, keyRoot2))
+                consumer.accept(new SubtreeMatch(l, this.treeDist.get(l, root1)));
+        }
+    }
+
+    private static SubtreeDistanceCache.Subtree[] subtrees(IndexedTree tree) {
+        SubtreeDistanceCache.Subtree[] subtrees = new SubtreeDistanceCache.Subtree[tree.getKeyrootCount()];
+        for (int i = 0; i < subtrees.length; i++)
+            subtrees[i] = SubtreeDistanceCache.Subtree.of(tree, tree.getKeyroot(i));
+
+        return subtrees;
+    }
+
+    /**
+     * Returns the postorder IDs of nodes on the leftmost path of keyroot {@code keyRoot}, in postorder.
+     */
+    private static int[] leftmostPath(IndexedTree tree, int keyRoot) {
+        int leftmost = tree.getLeftmostLeaf(keyRoot), count = 0;
+        int[] path = new int[keyRoot - leftmost + 1];
+        for (int k = leftmost; k <= keyRoot; k++) {
+            if (tree.getLeftmostLeaf(k) == leftmost)
+                path[count++] = k;
+        }
+
+        return Arrays.copyOf(path, count);
+    }
+
+    IntTable treeDistances() {
+        return this.treeDist;
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.treeDist.close();
+        } finally {
+            this.forestDist.close();
+        }
+    }
+
+    /**
+     * Fills in the forest distance table for the subtrees rooted at keyroots {@code keyRoot1} and {@code keyRoot2},
+     * storing the distances between every pair of subtrees on their leftmost paths into the tree distance table.
+     */
+    private void forestDistance(int keyRoot1, int keyRoot2) {
+        this.kr1 = keyRoot1;
+        this.kr2 = keyRoot2;
+        this.lm1 = this.t1.getLeftmostLeaf(keyRoot1);
+        this.lm2 = this.t2.getLeftmostLeaf(keyRoot2);
+
+        int bound1 = this.kr1 - this.lm1 + 2;
+        int bound2 = this.kr2 - this.lm2 + 2;
+
+        // initialize forest distance table
+        int sum = 0;
+        this.forestDist.set(0, 0, sum);
+        this.pathCount = 0;
+        for (int j = 1, k = this.lm1; j < bound1; j++, k++) {
+            this.labels1[j] = this.nodes1.labels[k];
+            this.subforests1[j] = this.nodes1.leftmost[k] - this.lm1;
+            if (this.subforests1[j] == 0)
+                this.pathColumns[this.pathCount++] = j;
+
+            this.deleteCosts[j] = this.nodes1.costs[k];
+            sum += this.deleteCosts[j];
+            this.forestDist.set(0, j, sum);
+        }
+
+        sum = 0;
+        for (int i = 1, l = this.lm2; i < bound2; i++, l++) {
+            this.labels2[i] = this.nodes2.labels[l];
+            this.leftmost2[i] = this.nodes2.leftmost[l];
+            this.insertCosts[i] = this.nodes2.costs[l];
+            sum += this.insertCosts[i];
+            this.forestDist.set(i, 0, sum);
+        }
+
+        long cells = (long) (bound1 - 1) * (bound2 - 1);
+        if (cells >= this.options.getParallelThreshold())
+            fillParallel(bound1, bound2);
+        else
+            fillSequential(bound1, bound2);
+    }
+
+    private void fillSequential(int bound1, int bound2) {
+        for (int i = 1; i < bound2; i++) {
+            if (this.budget != null)
+                this.budget.charge(bound1 - 1);
+
+            fillTile(i, i + 1, 1, bound1);
+        }
+    }
+
+    /**
+     * Fills in the forest distance table in wavefronts of tiles. All tiles on an anti-diagonal only depend on tiles
+     * of previous anti-diagonals, so they are calculated concurrently.
+     */
+    private void fillParallel(int bound1, int bound2) {
+        int size = this.options.getTileSize();
+        int rows = (bound2 - 2) / size + 1, columns = (bound1 - 2) / size + 1;
+
+        for (int diagonal = 0; diagonal < rows + columns - 1; diagonal++) {
+            List<ForkJoinTask<?>> tiles = new ArrayList<>();
+            long cells = 0;
+
+            for (int row = Math.max(0, diagonal - columns + 1); row <= Math.min(diagonal, rows - 1); row++) {
+                int fromRow = 1 + row * size, toRow = Math.min(bound2, fromRow + size),
+                        fromColumn = 1 + (diagonal - row) * size, toColumn = Math.min(bound1, fromColumn + size);
+
+                cells += (long) (toRow - fromRow) * (toColumn - fromColumn);
+                tiles.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        fillTile(fromRow, toRow, fromColumn, toColumn);
+                    }
+                });
+            }
+
+            if (this.budget != null)
+                this.budget.charge(cells);
+
+            this.options.getPool().invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tiles);
+                }
+            });
+        }
+    }
+
+    /**
+     * Calculates forest distances of rows [{@code fromRow}, {@code toRow}) and columns [{@code fromColumn},
+     * {@code toColumn}) of the current table. All cells above and to the left of the tile must be calculated.
+     */
+    private void fillTile(int fromRow, int toRow, int fromColumn, int toColumn) {
+        int lm2 = this.lm2, offset = this.lm1 - 1;
+        int[][] scratch = this.scratch == null ? null : this.scratch.get();
+
+        // the first column of preceding forests used by the tile
+        int first = fromColumn;
+        for (int j = fromColumn; j < toColumn; j++)
+            first = Math.min(first, this.subforests1[j]);
+
+        int[] previous = this.forestDist.load(fromRow - 1, fromColumn - 1, toColumn, row(scratch, 0));
+        for (int i = fromRow; i < toRow; i++) {
+            int l = lm2 + i - 1;
+            int insert = this.insertCosts[i];
+            int[] current = this.forestDist.load(i, fromColumn - 1, fromColumn, row(scratch, (i - fromRow + 1) & 1)),
+                    forests = this.forestDist.load(this.leftmost2[i] - lm2, first, toColumn, row(scratch, 2)),
+                    subtrees = this.treeDist.load(l, offset + fromColumn, offset + toColumn, row(scratch, 3));
+
+            // insert the row node or combine the preceding forests with the subtrees of both nodes
+            RowKernel.relax(previous, insert, forests, this.subforests1, subtrees, offset, current, fromColumn,
+                    toColumn);
+
+            // cells of whole subtrees rename the column node into the row node instead
+            boolean wholeRow = this.leftmost2[i] == lm2;
+            if (wholeRow) {
+                for (int p = 0; p < this.pathCount; p++) {
+                    int j = this.pathColumns[p];
+                    if (j >= fromColumn && j < toColumn)
+                        current[j] = Math.min(previous[j] + insert,
+                                previous[j - 1] + this.costs.renameCost(this.labels1[j], this.labels2[i]));
+                }
+            }
+
+            // delete the column node
+            for (int j = fromColumn; j < toColumn; j++)
+                current[j] = Math.min(current[j], current[j - 1] + this.deleteCosts[j]);
+
+            this.forestDist.store(i, current, fromColumn, toColumn);
+            if (wholeRow) {
+                for (int p = 0; p < this.pathCount; p++) {
+                    int j = this.pathColumns[p];
+                    if (j >= fromColumn && j < toColumn)
+                        this.treeDist.set(l, offset + j, current[j]);
+                }
+            }
+
+            previous = current;
+        }
+    }
+
+    private static int[] row(int[][] scratch, int index) {
+        return scratch == null ? null : scratch[index];
+    }
+
+    /**
+     * The labels, leftmost leaf descendants and delete or insert costs of all nodes of a tree, calculated once for
+     * every tree instead of once for every forest distance table.
+     */
+    static final class NodeCosts {
+
+        final IndexedTree tree;
+
+        final int[] labels, leftmost, costs;
+
+        private NodeCosts(IndexedTree tree) {
+            this.tree = tree;
+            this.labels = new int[tree.size()];
+            this.leftmost = new int[tree.size()];
+            this.costs = new int[tree.size()];
+            for (int k = 0; k < tree.size(); k++) {
+                this.labels[k] = tree.getLabel(k);
+                this.leftmost[k] = tree.getLeftmostLeaf(k);
+            }
+        }
+
+        /**
+         * Prepares the nodes of the first tree with their delete costs.
+         */
+        static NodeCosts deleted(IndexedTree tree, LabelCostModel costs) {
+            NodeCosts nodes = new NodeCosts(tree);
+            for (int k = 0; k < tree.size(); k++) {
+                // prevent removing the root node
+                nodes.costs[k] = k == tree.getRoot() ? TreeDistance.HIGH_COST : costs.deleteCost(nodes.labels[k]);
+            }
+
+            return nodes;
+        }
+
+        /**
+         * Prepares the nodes of the second tree with their insert costs.
+         */
+        static NodeCosts inserted(IndexedTree tree, LabelCostModel costs) {
+            NodeCosts nodes = new NodeCosts(tree);
+            for (int l = 0; l < tree.size(); l++)
+                nodes.costs[l] = costs.insertCost(nodes.labels[l]);
+
+            return nodes;
+        }
+    }
+
+    /**
+     * The heap tables and arrays of computations run one after another by a single thread, kept so that comparing a
+     * tree with many others does not allocate them for every pair. They grow to the largest pair of trees compared.
+     * Cells are always calculated before they are read, so they are never cleared.
+     */
+    static final class Workspace {
+
+        private IntTable treeDist, forestDist;
+
+        private int tableRows, tableColumns, arrayRows = -1, arrayColumns = -1;
+
+        private int[] deleteCosts, labels1, subforests1, pathColumns, insertCosts, labels2, leftmost2;
+
+        private void reserveTables(int n1, int n2) {
+            if (this.treeDist != null && n1 <= this.tableColumns && n2 <= this.tableRows)
+                return;
+
+            this.tableRows = Math.max(this.tableRows, n2);
+            this.tableColumns = Math.max(this.tableColumns, n1);
+            this.treeDist = IntTable.onHeap(this.tableRows, this.tableColumns);
+            this.forestDist = IntTable.onHeap(this.tableRows + 1, this.tableColumns + 1);
+        }
+
+        /**
+         * Returns the number of cells of the kept tree distance table.
+         */
+        long tableCells() {
+            return this.treeDist == null ? 0 : (long) this.tableRows * this.tableColumns;
+        }
+
+        private void reserveArrays(int n1, int n2) {
+            if (n1 > this.arrayColumns) {
+                this.arrayColumns = n1;
+                this.deleteCosts = new int[n1 + 1];
+                this.labels1 = new int[n1 + 1];
+                this.subforests1 = new int[n1 + 1];
+                this.pathColumns = new int[n1 + 1];
+            }
+
+            if (n2 > this.arrayRows) {
+                this.arrayRows = n2;
+                this.insertCosts = new int[n2 + 1];
+                this.labels2 = new int[n2 + 1];
+                this.leftmost2 = new int[n2 + 1];
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ package com.github.tmatek.zhangshasha;
  * <li>{@link #OP_DELETE_NODE}</li>
  * <li>{@link #OP_RENAME_NODE}</li>
  * <li>{@link #OP_INSERT_NODE}</li>
+ * <li>{@link #OP_MOVE_SUBTREE}</li>
  * </ul>
  */
 public enum TreeOperation {
@@ -24,6 +25,13 @@ public enum TreeOperation {
      * Insert a new node into the tree structure as a child of parent <code>p</code>, at specified position
      * <code>k</code>, making <code>m</code> next siblings children of the inserted node.
      */
-    OP_INSERT_NODE
+    OP_INSERT_NODE,
+
+    /**
+     * Move an existing subtree to a new parent <code>p</code>, at specified position <code>k</code>. Moves are
+     * produced only by {@link TreeDistance#compactMoves(java.util.List)}, which replaces the deletes and inserts of
+     * all nodes of identical subtrees.
+     */
+    OP_MOVE_SUBTREE
 
 }
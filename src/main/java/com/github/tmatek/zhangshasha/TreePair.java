@@ -0,0 +1,59 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * A pair of similar trees found by {@link TreeSimilarityJoin}, given by their indices in the joined collections,
+ * together with their tree distance.
+ */
+public final class TreePair {
+
+    private final int first, second, distance;
+
+    TreePair(int first, int second, int distance) {
+        this.first = first;
+        this.second = second;
+        this.distance = distance;
+    }
+
+    /**
+     * Returns the index of the tree in the first collection.
+     * @return the index of the first tree
+     */
+    public int getFirst() {
+        return this.first;
+    }
+
+    /**
+     * Returns the index of the tree in the second collection.
+     * @return the index of the second tree
+     */
+    public int getSecond() {
+        return this.second;
+    }
+
+    /**
+     * Returns the tree distance between both trees.
+     * @return the tree distance between both trees
+     */
+    public int getDistance() {
+        return this.distance;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TreePair))
+            return false;
+
+        TreePair other = (TreePair) o;
+        return this.first == other.first && this.second == other.second && this.distance == other.distance;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * this.first + this.second) + this.distance;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + this.first + ", " + this.second + "): " + this.distance;
+    }
+}
@@ -0,0 +1,345 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A similarity join of two collections of {@link IndexedTree}s: finds all pairs of trees, one from each collection,
+ * whose tree distance is at most a given threshold.
+ * <br><br>
+ * Most pairs are never compared. The second collection is partitioned by tree sizes, so that only trees of similar
+ * size are considered, and the remaining candidates are filtered by a lower bound derived from label histograms:
+ * transforming a tree into another takes at least {@code max(|T1|, |T2|) - c} operations, where {@code c} is the
+ * number of labels the trees have in common (as multisets). Every operation, apart from renaming a label into itself,
+ * costs at least the minimal operation cost given to the join. The remaining candidates are verified by calculating
+ * their tree distance on a {@link ForkJoinPool}.
+ * <br><br>
+ * Matching pairs are passed to the consumer on the calling thread through a bounded queue; when the consumer falls
+ * behind, the verification waits for it.
+ */
+public final class TreeSimilarityJoin {
+
+    /**
+     * The default number of matching pairs waiting for the consumer.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    // the number of trees of the first collection verified by a single task
+    private static final int GRAIN = 16;
+
+    private static final long POLL_MILLIS = 10;
+
+    private final LabelCostModel costs;
+
+    private final int minOperationCost;
+
+    private ForkJoinPool pool;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Creates a similarity join with transformation costs {@code costs}.
+     *
+     * @param costs            the transformation costs for node labels
+     * @param minOperationCost the minimal cost of deleting, inserting or renaming a node into a different label, used
+     *                         for filtering; 0 disables filtering
+     * @throws IllegalArgumentException if {@code costs} is {@code null} or {@code minOperationCost} is negative
+     */
+    public TreeSimilarityJoin(LabelCostModel costs, int minOperationCost) {
+        if (costs == null)
+            throw new IllegalArgumentException("The cost model must not be null");
+
+        if (minOperationCost < 0)
+            throw new IllegalArgumentException("The minimal operation cost must not be negative");
+
+        this.costs = costs;
+        this.minOperationCost = minOperationCost;
+    }
+
+    /**
+     * Returns the pool used for verification, which is {@link ForkJoinPool#commonPool()} unless set.
+     * @return the pool used for verification
+     */
+    public ForkJoinPool getPool() {
+        return this.pool == null ? ForkJoinPool.commonPool() : this.pool;
+    }
+
+    /**
+     * Sets the pool used for verification.
+     * @param pool the pool used for verification or {@code null} for the common pool
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * Sets the number of matching pairs which may wait for the consumer before the verification is suspended.
+     * @param queueCapacity the capacity of the queue of matching pairs
+     * @throws IllegalArgumentException if {@code queueCapacity} is not positive
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0)
+            throw new IllegalArgumentException("The queue capacity must be positive");
+
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Finds all pairs of trees from {@code first} and {@code second} with tree distance at most {@code threshold}
+     * and passes them to {@code consumer} on the calling thread, in no particular order. The tree of the first
+     * collection is the first argument of the tree distance.
+     *
+     * @param first     the first collection of trees
+     * @param second    the second collection of trees
+     * @param threshold the maximal tree distance of a matching pair
+     * @param consumer  the consumer of matching pairs
+     * @throws IllegalArgumentException if any of the collections or the consumer is {@code null}
+     * @throws InterruptedException     if the calling thread is interrupted while waiting for matching pairs
+     */
+    public void join(List<IndexedTree> first, List<IndexedTree> second, int threshold,
+                     Consumer<? super TreePair> consumer) throws InterruptedException {
+        if (first == null || second == null || consumer == null)
+            throw new IllegalArgumentException("Both collections and the consumer must not be null");
+
+        if (threshold < 0)
+            return;
+
+        Run run = new Run(first, second, threshold);
+        ForkJoinTask<Void> task = getPool().submit(run.new Partition(0, first.size()));
+
+        try {
+            while (true) {
+                TreePair pair = run.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (pair != null)
+                    consumer.accept(pair);
+                else if (task.isDone() && run.queue.isEmpty())
+                    break;
+            }
+
+            task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new IllegalStateException(cause);
+        } finally {
+            // stop the verification if the consumer failed or the caller was interrupted
+            run.stopped = true;
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * The state of a single join.
+     */
+    private final class Run {
+
+        private final List<IndexedTree> first, second;
+
+        private final int threshold;
+
+        // indices of trees of the second collection, ordered by their sizes, and their sorted labels
+        private final Integer[] bySize;
+
+        private final int[] sizes;
+
+        private final int[][] labels2;
+
+        private final BlockingQueue<TreePair> queue = new ArrayBlockingQueue<>(TreeSimilarityJoin.this.queueCapacity);
+
+        private final DistanceOptions options = new DistanceOptions();
+
+        private volatile boolean stopped;
+
+        Run(List<IndexedTree> first, List<IndexedTree> second, int threshold) {
+            this.first = first;
+            this.second = second;
+            this.threshold = threshold;
+
+            this.bySize = new Integer[second.size()];
+            for (int i = 0; i < this.bySize.length; i++)
+                this.bySize[i] = i;
+
+            Arrays.sort(this.bySize, (a, b) -> Integer.compare(second.get(a).size(), second.get(b).size()));
+
+            this.sizes = new int[this.bySize.length];
+            this.labels2 = new int[this.bySize.length][];
+            for (int i = 0; i < this.bySize.length; i++) {
+                this.sizes[i] = second.get(this.bySize[i]).size();
+                this.labels2[i] = sortedLabels(second.get(this.bySize[i]));
+            }
+
+            // pairs are verified in parallel already
+            this.options.setParallelThreshold(Long.MAX_VALUE);
+        }
+
+        /**
+         * Verifies all candidate pairs of tree {@code index} of the first collection.
+         */
+        private void verify(int index) {
+            IndexedTree tree = this.first.get(index);
+            int size = tree.size(), minCost = TreeSimilarityJoin.this.minOperationCost;
+            int[] labels = minCost > 0 ? sortedLabels(tree) : null;
+
+            // only trees whose sizes differ by at most threshold / minCost may match
+            int from = 0, to = this.sizes.length;
+            if (minCost > 0) {
+                long slack = this.threshold / minCost;
+                from = lowerBound(size - slack);
+                to = lowerBound(size + slack + 1);
+            }
+
+            for (int i = from; i < to; i++) {
+                if (this.stopped)
+                    throw new CancellationException();
+
+                if (minCost > 0) {
+                    long operations = Math.max(size, this.sizes[i]) - commonLabels(labels, this.labels2[i]);
+                    if (operations * minCost > this.threshold)
+                        continue;
+                }
+
+                int distance = IndexedTreeDistance.exactTreeDistance(tree, this.second.get(this.bySize[i]),
+                        TreeSimilarityJoin.this.costs, null, this.options);
+
+                if (distance <= this.threshold)
+                    offer(new TreePair(index, this.bySize[i], distance));
+            }
+        }
+
+        /**
+         * Passes pair {@code pair} on to the consumer, waiting while the queue is full. The wait is managed by the
+         * pool, which may start another worker meanwhile, so a slow consumer does not take threads away from the pool.
+         */
+        private void offer(TreePair pair) {
+            Offer offer = new Offer(pair);
+            try {
+                ForkJoinPool.managedBlock(offer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException();
+            }
+
+            if (!offer.offered)
+                throw new CancellationException();
+        }
+
+        /**
+         * Returns the first position in {@link #sizes} holding a size of at least {@code size}.
+         */
+        private int lowerBound(long size) {
+            int low = 0, high = this.sizes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.sizes[mid] < size)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+
+            return low;
+        }
+
+        /**
+         * Splits a range of trees of the first collection until it is small enough to be verified by a single task.
+         */
+        private final class Partition extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int from, to;
+
+            Partition(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (this.to - this.from <= GRAIN) {
+                    for (int i = this.from; i < this.to; i++)
+                        verify(i);
+                } else {
+                    int mid = (this.from + this.to) >>> 1;
+                    invokeAll(new Partition(this.from, mid), new Partition(mid, this.to));
+                }
+            }
+        }
+
+        /**
+         * Waits until a pair has been put into the queue or the join has been stopped.
+         */
+        private final class Offer implements ForkJoinPool.ManagedBlocker {
+
+            private final TreePair pair;
+
+            private boolean offered;
+
+            Offer(TreePair pair) {
+                this.pair = pair;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                if (!this.offered)
+                    this.offered = Run.this.queue.offer(this.pair);
+
+                return this.offered || Run.this.stopped;
+            }
+
+            @Override
+            public boolean block() throws InterruptedException {
+                if (!this.offered)
+                    this.offered = Run.this.queue.offer(this.pair, POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+                return this.offered || Run.this.stopped;
+            }
+        }
+    }
+
+    private static int[] sortedLabels(IndexedTree tree) {
+        int[] labels = new int[tree.size()];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = tree.getLabel(i);
+
+        Arrays.sort(labels);
+        return labels;
+    }
+
+    /**
+     * Returns the size of the multiset intersection of sorted labels {@code a} and {@code b}.
+     */
+    private static int commonLabels(int[] a, int[] b) {
+        int common = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j])
+                i++;
+            else if (a[i] > b[j])
+                j++;
+            else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+
+        return common;
+    }
+}
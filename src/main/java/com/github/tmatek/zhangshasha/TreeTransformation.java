@@ -82,8 +82,10 @@ public class TreeTransformation implements Comparable<TreeTransformation> {
     }
 
     /**
-     * Returns the position of tree node insertion for {@link TreeOperation#OP_INSERT_NODE} operation.
-     * @return the position of tree node insertion for {@link TreeOperation#OP_INSERT_NODE} operation
+     * Returns the position of tree node insertion for {@link TreeOperation#OP_INSERT_NODE} and
+     * {@link TreeOperation#OP_MOVE_SUBTREE} operations.
+     * @return the position of tree node insertion for {@link TreeOperation#OP_INSERT_NODE} and
+     * {@link TreeOperation#OP_MOVE_SUBTREE} operations
      */
     public int getPosition() {
         return position;
@@ -100,7 +102,7 @@ public class TreeTransformation implements Comparable<TreeTransformation> {
     }
 
     /**
-     * For {@link TreeOperation#OP_INSERT_NODE} returns the number of children of
+     * For {@link TreeOperation#OP_INSERT_NODE} and {@link TreeOperation#OP_MOVE_SUBTREE} returns the number of children of
      * {@link TreeTransformation#getSecondNode()}, so that the insertion position can be calculated.
      * @return the number of children of {@link TreeTransformation#getSecondNode()}
      */
@@ -110,6 +112,14 @@ public class TreeTransformation implements Comparable<TreeTransformation> {
 
     @Override
     public int compareTo(TreeTransformation o) {
-        return this.operation.ordinal() - o.getOperation().ordinal();
+        return rank(this.operation) - rank(o.getOperation());
+    }
+
+    /**
+     * Moves are applied among inserts, because their positions assume the same tree as the inserts' positions.
+     */
+    private static int rank(TreeOperation operation) {
+        return operation == TreeOperation.OP_MOVE_SUBTREE ? TreeOperation.OP_INSERT_NODE.ordinal()
+                : operation.ordinal();
     }
 }
@@ -0,0 +1,581 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import com.github.tmatek.zhangshasha.DistanceOptions;
+import com.github.tmatek.zhangshasha.IndexedTree;
+import com.github.tmatek.zhangshasha.IndexedTreeDistance;
+import com.github.tmatek.zhangshasha.LabelCostModel;
+import com.github.tmatek.zhangshasha.LabelDictionary;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Compares two directories of serialized trees in parallel: every file of the first directory is compared with the
+ * file of the same name in the second directory. Files whose names end with <code>.json</code> are parsed as JSON
+ * documents (objects, arrays and their members are nodes, values are leaves), all other files are parsed as trees in
+ * bracket notation, e.g. <code>A(B,C,D(E))</code>.
+ * <br><br>
+ * Pairs pass the stages of a pipeline (see {@link BatchStage}), which run on their own threads and are connected by
+ * bounded queues. The first directory is listed while pairs are compared, so only a limited number of pairs is held
+ * in memory however large the directories are. The result of every pair is written as soon as it is known, as a
+ * single JSON line: <code>{"pair":"a.json","distance":3,"size1":10,"size2":11}</code>, extended by the edit script if
+ * requested. Results are written in the order of completion; pairs which cannot be compared are written with an
+ * <code>"error"</code> instead of the distance.
+ * <br><br>
+ * From the command line, <code>java -jar zhang-shasha-java.jar [--edit-scripts] [--workers n]
+ * [--queue-capacity n] first second [output]</code> writes the results to the output file (or the standard output)
+ * and the report of the run to the standard error.
+ */
+public final class BatchDiff {
+
+    /**
+     * The default capacity of the queues between stages.
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    private static final String USAGE = "Usage: java -jar zhang-shasha-java.jar [--edit-scripts] [--workers n] "
+            + "[--queue-capacity n] <first-directory> <second-directory> [<output-file>]";
+
+    private final Path first, second;
+
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private boolean editScripts;
+
+    private LabelCosts costs = LabelCosts.UNIT;
+
+    private DistanceOptions options = new DistanceOptions();
+
+    /**
+     * Creates a comparison of the files of directory {@code first} with the files of the same names in directory
+     * {@code second}.
+     *
+     * @param first  the directory of the first trees
+     * @param second the directory of the second trees
+     * @throws IllegalArgumentException if {@code first} or {@code second} is {@code null}
+     */
+    public BatchDiff(Path first, Path second) {
+        if (first == null || second == null)
+            throw new IllegalArgumentException("Both directories must not be null");
+
+        this.first = first;
+        this.second = second;
+    }
+
+    public int getWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * Sets the number of threads of each of the parse, preprocess and distance stages. Defaults to the number of
+     * available processors.
+     *
+     * @param workers the number of threads per stage
+     * @throws IllegalArgumentException if {@code workers} is not positive
+     */
+    public void setWorkers(int workers) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("The number of workers must be positive");
+
+        this.workers = workers;
+    }
+
+    public int getQueueCapacity() {
+        return this.queueCapacity;
+    }
+
+    /**
+     * Sets the capacity of the queues between stages; a stage waits while its output queue is full.
+     *
+     * @param queueCapacity the capacity of each queue
+     * @throws IllegalArgumentException if {@code queueCapacity} is not positive
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0)
+            throw new IllegalArgumentException("The queue capacity must be positive");
+
+        this.queueCapacity = queueCapacity;
+    }
+
+    public boolean isEditScripts() {
+        return this.editScripts;
+    }
+
+    /**
+     * Sets whether the edit script of every pair is written as well: the deleted nodes of the first tree, the renamed
+     * nodes of the first tree and the inserted nodes of the second tree, identified by their postorder IDs. As in
+     * {@link com.github.tmatek.zhangshasha.TreeTransformation}, every insert gives its parent, its position among the
+     * children of the parent and the number of children of the parent in the second tree; inserts are ordered by
+     * descending postorder IDs, so parents are inserted before their children.
+     *
+     * @param editScripts {@code true} to write edit scripts
+     */
+    public void setEditScripts(boolean editScripts) {
+        this.editScripts = editScripts;
+    }
+
+    public LabelCosts getCosts() {
+        return this.costs;
+    }
+
+    /**
+     * Sets the costs of the labels. The cost function is used by many threads, so it must be thread-safe. Defaults
+     * to {@link LabelCosts#UNIT}.
+     *
+     * @param costs the transformation costs for node labels
+     * @throws IllegalArgumentException if {@code costs} is {@code null}
+     */
+    public void setCosts(LabelCosts costs) {
+        if (costs == null)
+            throw new IllegalArgumentException("The cost model must not be null");
+
+        this.costs = costs;
+    }
+
+    public DistanceOptions getOptions() {
+        return this.options;
+    }
+
+    /**
+     * Sets the options of the distance calculations of all pairs.
+     *
+     * @param options the options of the calculations
+     * @throws IllegalArgumentException if {@code options} is {@code null}
+     */
+    public void setOptions(DistanceOptions options) {
+        if (options == null)
+            throw new IllegalArgumentException("The options must not be null");
+
+        this.options = options;
+    }
+
+    /**
+     * Compares all pairs of files, writing the result of every pair to {@code output} as soon as it is known. The
+     * output is flushed but not closed.
+     *
+     * @param output the output of the results
+     * @return the statistics of the run
+     * @throws IllegalArgumentException if {@code output} is {@code null}
+     * @throws IOException if the first directory cannot be listed or the output cannot be written
+     */
+    public BatchReport run(Writer output) throws IOException {
+        if (output == null)
+            throw new IllegalArgumentException("The output must not be null");
+
+        DirectoryStream<Path> files = Files.newDirectoryStream(this.first);
+        EnumMap<BatchStage, LatencyHistogram> latencies = new EnumMap<>(BatchStage.class);
+        for (BatchStage stage : BatchStage.values())
+            latencies.put(stage, new LatencyHistogram());
+
+        BlockingQueue<PairJob> parse = new ArrayBlockingQueue<>(this.queueCapacity),
+                preprocess = new ArrayBlockingQueue<>(this.queueCapacity),
+                distance = new ArrayBlockingQueue<>(this.queueCapacity),
+                results = new ArrayBlockingQueue<>(this.queueCapacity);
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+
+        // pairs are created while the directory is listed, so the listing is never held in memory
+        threads.add(start("batch-diff-input", () -> {
+            try {
+                try (DirectoryStream<Path> stream = files) {
+                    for (Path file : stream) {
+                        String name = file.getFileName().toString();
+                        if (Files.isRegularFile(file))
+                            parse.put(new PairJob(name, file, this.second.resolve(name)));
+                    }
+                } catch (IOException | DirectoryIteratorException e) {
+                    failure.compareAndSet(null, e);
+                }
+
+                parse.put(PairJob.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        startStage(threads, BatchStage.PARSE, parse, preprocess, latencies.get(BatchStage.PARSE), failure,
+                BatchDiff::parse);
+        startStage(threads, BatchStage.PREPROCESS, preprocess, distance, latencies.get(BatchStage.PREPROCESS),
+                failure, this::preprocess);
+        startStage(threads, BatchStage.DISTANCE, distance, results, latencies.get(BatchStage.DISTANCE), failure,
+                this::distance);
+
+        // the output stage runs on the calling thread, which owns the writer
+        long pairs = 0, failedPairs = 0, nodes = 0;
+        try {
+            for (PairJob job = results.take(); job != PairJob.END; job = results.take()) {
+                if (failure.get() != null)
+                    continue;
+
+                long written = System.nanoTime();
+                write(job, output);
+                latencies.get(BatchStage.OUTPUT).record(System.nanoTime() - written);
+
+                if (job.error != null) {
+                    failedPairs++;
+                } else {
+                    pairs++;
+                    nodes += job.tree1.size() + job.tree2.size();
+                }
+
+                job.tree1 = job.tree2 = null;
+                job.dictionary = null;
+                job.labels1 = job.labels2 = null;
+                job.mapping = null;
+            }
+
+            output.flush();
+            for (Thread thread : threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The comparison has been interrupted");
+        } finally {
+            // stops the stages if writing has failed
+            for (Thread thread : threads)
+                thread.interrupt();
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof DirectoryIteratorException)
+            throw ((DirectoryIteratorException) error).getCause();
+
+        if (error instanceof IOException)
+            throw (IOException) error;
+
+        if (error instanceof RuntimeException)
+            throw (RuntimeException) error;
+
+        if (error instanceof Error)
+            throw (Error) error;
+
+        return new BatchReport(pairs, failedPairs, nodes, System.nanoTime() - start, latencies);
+    }
+
+    private static Thread start(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Starts the workers of stage {@code stage}, which apply {@code work} to every job of queue {@code in} without an
+     * error and pass the job on to queue {@code out}. The end of the jobs is passed on once all workers have finished.
+     * If a job fails unexpectedly, the failure is stored into {@code failure} and the remaining jobs are only passed
+     * on.
+     */
+    private void startStage(List<Thread> threads, BatchStage stage, BlockingQueue<PairJob> in,
+                            BlockingQueue<PairJob> out, LatencyHistogram latencies, AtomicReference<Throwable> failure,
+                            Consumer<PairJob> work) {
+        AtomicInteger running = new AtomicInteger(this.workers);
+        for (int i = 0; i < this.workers; i++) {
+            threads.add(start("batch-diff-" + stage.name().toLowerCase(Locale.ROOT) + "-" + i, () -> {
+                try {
+                    while (true) {
+                        PairJob job = in.take();
+                        if (job == PairJob.END) {
+                            // the other workers of the stage must see the end as well
+                            in.put(job);
+                            break;
+                        }
+
+                        if (job.error == null && failure.get() == null) {
+                            long started = System.nanoTime();
+                            try {
+                                work.accept(job);
+                            } catch (Throwable e) {
+                                failure.compareAndSet(null, e);
+                            }
+
+                            latencies.record(System.nanoTime() - started);
+                        }
+
+                        out.put(job);
+                    }
+
+                    if (running.decrementAndGet() == 0)
+                        out.put(PairJob.END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+    }
+
+    private static void parse(PairJob job) {
+        try {
+            job.parsed1 = read(job.first);
+            job.parsed2 = read(job.second);
+        } catch (IOException | IllegalArgumentException e) {
+            job.error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    /**
+     * Parses the tree stored in file {@code file}, which is mapped into memory and decoded as UTF-8 while it is parsed.
+     */
+    private static ParsedTree read(Path file) throws IOException {
+        CharStream text;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            text = new CharStream(bytes);
+        }
+
+        try {
+            return file.getFileName().toString().endsWith(".json") ? JsonParser.parse(text)
+                    : BracketParser.parse(text);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(file.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void preprocess(PairJob job) {
+        // labels only need to be consistent within a pair, so every pair has its own dictionary
+        LabelDictionary labels = new LabelDictionary();
+        job.tree1 = job.parsed1.index(labels);
+        job.tree2 = job.parsed2.index(labels);
+        job.dictionary = labels;
+
+        if (this.editScripts) {
+            job.labels1 = job.parsed1.postorderLabels();
+            job.labels2 = job.parsed2.postorderLabels();
+        }
+
+        job.parsed1 = job.parsed2 = null;
+    }
+
+    private void distance(PairJob job) {
+        LabelCostModel costs = this.costs == LabelCosts.UNIT ? LabelCostModel.UNIT
+                : new PairCosts(job.dictionary, this.costs);
+        if (!this.editScripts) {
+            job.distance = IndexedTreeDistance.treeDistance(job.tree1, job.tree2, costs, this.options);
+            return;
+        }
+
+        IndexedTree t1 = job.tree1, t2 = job.tree2;
+        job.mapping = IndexedTreeDistance.editMapping(t1, t2, costs, this.options);
+
+        boolean[] mapped = new boolean[t2.size()];
+        int distance = 0;
+        for (int k = 0; k < t1.size(); k++) {
+            if (job.mapping[k] == -1) {
+                distance += costs.deleteCost(t1.getLabel(k));
+            } else {
+                mapped[job.mapping[k]] = true;
+                distance += costs.renameCost(t1.getLabel(k), t2.getLabel(job.mapping[k]));
+            }
+        }
+
+        for (int l = 0; l < t2.size(); l++) {
+            if (!mapped[l])
+                distance += costs.insertCost(t2.getLabel(l));
+        }
+
+        job.distance = distance;
+    }
+
+    private static void write(PairJob job, Writer output) throws IOException {
+        StringBuilder line = new StringBuilder("{\"pair\":");
+        quote(job.name, line);
+
+        if (job.error != null) {
+            line.append(",\"error\":");
+            quote(job.error, line);
+        } else {
+            line.append(",\"distance\":").append(job.distance).append(",\"size1\":").append(job.tree1.size())
+                    .append(",\"size2\":").append(job.tree2.size());
+
+            if (job.mapping != null)
+                appendScript(job, line);
+        }
+
+        output.write(line.append("}\n").toString());
+    }
+
+    /**
+     * Appends the edit script of job {@code job}: deletes and renames of nodes of the first tree, followed by inserts
+     * of nodes of the second tree together with their parents, positions and the child counts of their parents in the
+     * second tree (see {@link #setEditScripts(boolean)}).
+     */
+    private static void appendScript(PairJob job, StringBuilder line) {
+        line.append(",\"script\":[");
+        int length = line.length();
+
+        boolean[] mapped = new boolean[job.tree2.size()];
+        for (int k = 0; k < job.mapping.length; k++) {
+            if (job.mapping[k] != -1) {
+                mapped[job.mapping[k]] = true;
+                continue;
+            }
+
+            line.append(line.length() == length ? "" : ",").append("{\"op\":\"delete\",\"node\":").append(k)
+                    .append(",\"label\":");
+            quote(job.labels1[k], line);
+            line.append('}');
+        }
+
+        for (int k = 0; k < job.mapping.length; k++) {
+            int l = job.mapping[k];
+            if (l == -1 || job.labels1[k].equals(job.labels2[l]))
+                continue;
+
+            line.append(line.length() == length ? "" : ",").append("{\"op\":\"rename\",\"node\":").append(k)
+                    .append(",\"to\":").append(l).append(",\"label\":");
+            quote(job.labels2[l], line);
+            line.append('}');
+        }
+
+        // positions of nodes among their siblings; children have increasing postorder IDs
+        int[] positions = new int[mapped.length], childCounts = new int[mapped.length];
+        for (int l = 0; l < mapped.length; l++) {
+            int parent = job.tree2.getParent(l);
+            if (parent != -1)
+                positions[l] = childCounts[parent]++;
+        }
+
+        for (int l = mapped.length - 1; l >= 0; l--) {
+            if (mapped[l])
+                continue;
+
+            int parent = job.tree2.getParent(l);
+            line.append(line.length() == length ? "" : ",").append("{\"op\":\"insert\",\"node\":").append(l)
+                    .append(",\"parent\":").append(parent);
+            if (parent != -1)
+                line.append(",\"position\":").append(positions[l]).append(",\"childCount\":")
+                        .append(childCounts[parent]);
+
+            line.append(",\"label\":");
+            quote(job.labels2[l], line);
+            line.append('}');
+        }
+
+        line.append(']');
+    }
+
+    private static void quote(String value, StringBuilder line) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                line.append('\\').append(c);
+            else if (c < 0x20)
+                line.append(String.format("\\u%04x", (int) c));
+            else
+                line.append(c);
+        }
+
+        line.append('"');
+    }
+
+    /**
+     * Runs the comparison from the command line, see {@link BatchDiff}.
+     *
+     * @param args the command line arguments
+     * @throws IOException if a directory cannot be listed or the output cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> paths = new ArrayList<>();
+        BatchDiff diff;
+        boolean editScripts = false;
+        int workers = 0, queueCapacity = 0;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--edit-scripts"))
+                    editScripts = true;
+                else if (args[i].equals("--workers") && i + 1 < args.length)
+                    workers = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--queue-capacity") && i + 1 < args.length)
+                    queueCapacity = Integer.parseInt(args[++i]);
+                else if (args[i].startsWith("--"))
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                else
+                    paths.add(args[i]);
+            }
+
+            if (paths.size() < 2 || paths.size() > 3)
+                throw new IllegalArgumentException("Two directories and an optional output file are required");
+
+            diff = new BatchDiff(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+            diff.setEditScripts(editScripts);
+            if (workers != 0)
+                diff.setWorkers(workers);
+
+            if (queueCapacity != 0)
+                diff.setQueueCapacity(queueCapacity);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        Writer output = paths.size() == 3 ? Files.newBufferedWriter(Paths.get(paths.get(2)), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try {
+            System.err.print(diff.run(output));
+        } finally {
+            if (paths.size() == 3)
+                output.close();
+            else
+                output.flush();
+        }
+    }
+
+    /**
+     * The costs of the labels of a single pair, which are interned into the dictionary of the pair. The dictionary is
+     * not changed once the pair has been preprocessed, so it can be read by many threads.
+     */
+    private static final class PairCosts implements LabelCostModel {
+
+        private final LabelDictionary labels;
+
+        private final LabelCosts costs;
+
+        PairCosts(LabelDictionary labels, LabelCosts costs) {
+            this.labels = labels;
+            this.costs = costs;
+        }
+
+        @Override
+        public int deleteCost(int label) {
+            return this.costs.deleteCost(this.labels.labelOf(label));
+        }
+
+        @Override
+        public int insertCost(int label) {
+            return this.costs.insertCost(this.labels.labelOf(label));
+        }
+
+        @Override
+        public int renameCost(int from, int to) {
+            return this.costs.renameCost(this.labels.labelOf(from), this.labels.labelOf(to));
+        }
+    }
+}
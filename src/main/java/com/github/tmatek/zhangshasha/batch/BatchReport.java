@@ -0,0 +1,103 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The statistics of a {@link BatchDiff} run: the number of compared pairs and nodes, the throughput and the latency
+ * histogram of every stage.
+ */
+public final class BatchReport {
+
+    private final long pairs, failedPairs, nodes, elapsedNanos;
+
+    private final Map<BatchStage, LatencyHistogram> latencies;
+
+    BatchReport(long pairs, long failedPairs, long nodes, long elapsedNanos,
+                EnumMap<BatchStage, LatencyHistogram> latencies) {
+        this.pairs = pairs;
+        this.failedPairs = failedPairs;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+        this.latencies = latencies;
+    }
+
+    /**
+     * Returns the number of pairs whose distance has been calculated.
+     * @return the number of compared pairs
+     */
+    public long getPairCount() {
+        return this.pairs;
+    }
+
+    /**
+     * Returns the number of pairs which could not be compared, e.g. because a file is missing or invalid.
+     * @return the number of failed pairs
+     */
+    public long getFailedPairCount() {
+        return this.failedPairs;
+    }
+
+    /**
+     * Returns the number of nodes of both trees of all compared pairs.
+     * @return the number of compared nodes
+     */
+    public long getNodeCount() {
+        return this.nodes;
+    }
+
+    /**
+     * Returns the wall-clock time of the run in nanoseconds.
+     * @return the wall-clock time of the run in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return this.elapsedNanos;
+    }
+
+    /**
+     * Returns the number of compared pairs per second of wall-clock time.
+     * @return the number of compared pairs per second
+     */
+    public double getPairsPerSecond() {
+        return perSecond(this.pairs);
+    }
+
+    /**
+     * Returns the number of compared nodes per second of wall-clock time.
+     * @return the number of compared nodes per second
+     */
+    public double getNodesPerSecond() {
+        return perSecond(this.nodes);
+    }
+
+    private double perSecond(long count) {
+        return this.elapsedNanos == 0 ? 0 : count * 1e9 / this.elapsedNanos;
+    }
+
+    /**
+     * Returns the histogram of the latencies of stage {@code stage}, one latency per pair.
+     *
+     * @param stage the stage of the pipeline
+     * @return the latency histogram of the stage
+     */
+    public LatencyHistogram getLatencies(BatchStage stage) {
+        return this.latencies.get(stage);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+                "pairs: %d (%d failed), nodes: %d, elapsed: %.3fs%nthroughput: %.1f pairs/s, %.1f nodes/s%n",
+                this.pairs, this.failedPairs, this.nodes, this.elapsedNanos / 1e9, getPairsPerSecond(),
+                getNodesPerSecond()));
+
+        for (Map.Entry<BatchStage, LatencyHistogram> stage : this.latencies.entrySet()) {
+            report.append(String.format(Locale.ROOT, "%s: %s%n", stage.getKey().name().toLowerCase(Locale.ROOT),
+                    stage.getValue()));
+            report.append(stage.getValue().toBucketString());
+        }
+
+        return report.toString();
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.tmatek.zhangshasha.batch;
+
+/**
+ * The stages of the {@link BatchDiff} pipeline. Every pair of trees passes all stages in order; the stages are
+ * connected by bounded queues and run concurrently.
+ */
+public enum BatchStage {
+
+    /**
+     * Read both files of a pair and parse them into trees with string labels.
+     */
+    PARSE,
+
+    /**
+     * Intern the labels of both trees and build their indexed trees.
+     */
+    PREPROCESS,
+
+    /**
+     * Calculate the tree distance and, if requested, the edit script of a pair.
+     */
+    DISTANCE,
+
+    /**
+     * Write the result of a pair to the output.
+     */
+    OUTPUT
+}
@@ -0,0 +1,81 @@
+package com.github.tmatek.zhangshasha.batch;
+
+/**
+ * Utility class which parses trees in bracket notation: the label of a node is followed by the children of the node in
+ * brackets, separated by commas, e.g. <code>A(B,C,D(E))</code>. Whitespace around labels is ignored.
+ */
+final class BracketParser {
+
+    private BracketParser() {
+    }
+
+    /**
+     * Parses the tree in bracket notation {@code text}.
+     *
+     * @throws IllegalArgumentException if {@code text} is not a single tree in bracket notation
+     */
+    static ParsedTree parse(CharSequence text) {
+        return parse(new CharStream(text));
+    }
+
+    /**
+     * Parses the tree in bracket notation read from {@code text}. The text is read in a single pass without recursion,
+     * so trees of any depth can be parsed.
+     *
+     * @throws IllegalArgumentException if the text is not a single tree in bracket notation
+     */
+    static ParsedTree parse(CharStream text) {
+        ParsedTree tree = new ParsedTree();
+        StringBuilder label = new StringBuilder();
+        int depth = 0;
+
+        while (true) {
+            int start = text.position();
+            label.setLength(0);
+            while (text.peek() != CharStream.END && !isDelimiter(text.peek()))
+                label.append(text.next());
+
+            String trimmed = label.toString().trim();
+            if (trimmed.isEmpty())
+                throw error("Missing node label", start);
+
+            if (depth == 0 && tree.size() > 0)
+                throw error("Only one root node is allowed", start);
+
+            tree.add(trimmed, depth);
+            if (text.peek() == '(') {
+                depth++;
+                text.next();
+                continue;
+            }
+
+            char c;
+            while ((c = text.peek()) == ')' || Character.isWhitespace(c)) {
+                if (c == ')' && depth-- == 0)
+                    throw error("Unmatched closing bracket", text.position());
+
+                text.next();
+            }
+
+            if (c == CharStream.END) {
+                if (depth != 0)
+                    throw error("Missing closing bracket", text.position());
+
+                return tree;
+            }
+
+            if (c != ',' || depth == 0)
+                throw error("Unexpected character '" + c + "'", text.position());
+
+            text.next();
+        }
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == '(' || c == ')' || c == ',';
+    }
+
+    private static IllegalArgumentException error(String message, int position) {
+        return new IllegalArgumentException(message + " at position " + position);
+    }
+}
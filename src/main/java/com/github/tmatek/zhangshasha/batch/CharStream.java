@@ -0,0 +1,104 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A sequence of characters read once from start to end. Characters of UTF-8 encoded bytes are decoded in chunks into a
+ * small buffer, which is reused for the next chunk, so a file of any size is parsed without a copy of its content.
+ */
+final class CharStream {
+
+    /**
+     * Returned by {@link #peek()} and {@link #next()} at the end of the characters.
+     */
+    static final char END = (char) -1;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final ByteBuffer bytes;
+
+    private final CharsetDecoder decoder;
+
+    private final CharBuffer chars;
+
+    private boolean flushed;
+
+    private int position;
+
+    /**
+     * Creates a stream of the characters of {@code text}.
+     */
+    CharStream(CharSequence text) {
+        this.bytes = null;
+        this.decoder = null;
+        this.chars = CharBuffer.wrap(text);
+    }
+
+    /**
+     * Creates a stream of the characters of the UTF-8 encoded bytes {@code bytes}, which are all given at once.
+     */
+    CharStream(ByteBuffer bytes) {
+        this.bytes = bytes;
+        this.decoder = StandardCharsets.UTF_8.newDecoder();
+        this.chars = CharBuffer.allocate(CHUNK_SIZE);
+        this.chars.flip();
+    }
+
+    /**
+     * Returns the number of characters consumed so far.
+     */
+    int position() {
+        return this.position;
+    }
+
+    /**
+     * Returns the next character without consuming it, or {@link #END}.
+     *
+     * @throws IllegalArgumentException if the bytes are not valid UTF-8
+     */
+    char peek() {
+        if (!this.chars.hasRemaining())
+            fill();
+
+        return this.chars.hasRemaining() ? this.chars.get(this.chars.position()) : END;
+    }
+
+    /**
+     * Consumes the next character and returns it, or returns {@link #END}.
+     *
+     * @throws IllegalArgumentException if the bytes are not valid UTF-8
+     */
+    char next() {
+        char c = peek();
+        if (c != END) {
+            this.chars.get();
+            this.position++;
+        }
+
+        return c;
+    }
+
+    /**
+     * Decodes the next chunk of characters into the buffer, once all of its characters have been consumed.
+     */
+    private void fill() {
+        if (this.decoder == null || this.flushed)
+            return;
+
+        this.chars.clear();
+        CoderResult result = this.decoder.decode(this.bytes, this.chars, true);
+        if (result.isError())
+            throw new IllegalArgumentException("Invalid UTF-8 at position " + this.position);
+
+        if (result.isUnderflow() && this.chars.position() < this.chars.capacity()) {
+            this.decoder.flush(this.chars);
+            this.flushed = true;
+        }
+
+        this.chars.flip();
+    }
+}
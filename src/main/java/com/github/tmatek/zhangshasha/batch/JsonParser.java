@@ -0,0 +1,223 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+/**
+ * Utility class which parses JSON documents into trees. An object is a node labeled <code>{}</code> whose children
+ * are its members; a member is a node labeled with the member name whose only child is the member value. An array is
+ * a node labeled <code>[]</code> whose children are its elements. Strings are leaves labeled with their (unescaped)
+ * values, numbers, booleans and {@code null} are leaves labeled with their literals.
+ * <br><br>
+ * For example, <code>{"a": [1, "x"]}</code> is parsed into tree <code>{}(a([](1,x)))</code>.
+ */
+final class JsonParser {
+
+    private static final String DELIMITERS = "{}[],:\" \t\r\n";
+
+    private static final Pattern NUMBER = Pattern.compile("-?(0|[1-9][0-9]*)(\\.[0-9]+)?([eE][+-]?[0-9]+)?");
+
+    private JsonParser() {
+    }
+
+    /**
+     * Parses the JSON document {@code text}.
+     *
+     * @throws IllegalArgumentException if {@code text} is not a single valid JSON value
+     */
+    static ParsedTree parse(CharSequence text) {
+        return parse(new CharStream(text));
+    }
+
+    /**
+     * Parses the JSON document read from {@code text}. The text is read in a single pass without recursion, so
+     * documents of any depth can be parsed.
+     *
+     * @throws IllegalArgumentException if the text is not a single valid JSON value
+     */
+    static ParsedTree parse(CharStream text) {
+        Reader reader = new Reader(text);
+        ParsedTree tree = new ParsedTree();
+
+        // the open objects and arrays; members of open objects are open nodes as well
+        Deque<Character> open = new ArrayDeque<>();
+        int depth = 0;
+        boolean value = true;
+
+        while (true) {
+            if (value) {
+                char c = reader.peek();
+                if (c == '{' || c == '[') {
+                    reader.next();
+                    tree.add(c == '{' ? "{}" : "[]", depth);
+                    if (reader.peek() == (c == '{' ? '}' : ']')) {
+                        reader.next();
+                    } else {
+                        open.push(c);
+                        depth++;
+                        if (c == '{')
+                            depth = member(reader, tree, depth);
+
+                        continue;
+                    }
+                } else if (c == '"') {
+                    tree.add(reader.string(), depth);
+                } else {
+                    tree.add(reader.literal(), depth);
+                }
+            }
+
+            // a value has been completed
+            if (open.isEmpty()) {
+                if (reader.peek() != CharStream.END)
+                    throw reader.error("Unexpected content after the JSON value");
+
+                return tree;
+            }
+
+            char container = open.peek();
+            if (container == '{')
+                depth--;
+
+            char c = reader.next();
+            if (c == ',') {
+                if (container == '{')
+                    depth = member(reader, tree, depth);
+
+                value = true;
+            } else if (c == (container == '{' ? '}' : ']')) {
+                open.pop();
+                depth--;
+                value = false;
+            } else {
+                throw reader.error("Expected ',' or '" + (container == '{' ? '}' : ']') + "'");
+            }
+        }
+    }
+
+    /**
+     * Reads the name of an object member and adds the member node at depth {@code depth}, returning the depth of the
+     * member value.
+     */
+    private static int member(Reader reader, ParsedTree tree, int depth) {
+        if (reader.peek() != '"')
+            throw reader.error("Expected a member name");
+
+        tree.add(reader.string(), depth);
+        if (reader.next() != ':')
+            throw reader.error("Expected ':'");
+
+        return depth + 1;
+    }
+
+    /**
+     * The parsed text, skipping whitespace between tokens.
+     */
+    private static final class Reader {
+
+        private final CharStream text;
+
+        Reader(CharStream text) {
+            this.text = text;
+        }
+
+        /**
+         * Skips whitespace and returns the next character without consuming it, or {@link CharStream#END}.
+         */
+        char peek() {
+            while (Character.isWhitespace(this.text.peek()))
+                this.text.next();
+
+            return this.text.peek();
+        }
+
+        /**
+         * Skips whitespace and consumes the next character.
+         */
+        char next() {
+            peek();
+            return this.text.next();
+        }
+
+        String string() {
+            StringBuilder value = new StringBuilder();
+            this.text.next();
+
+            while (this.text.peek() != CharStream.END) {
+                char c = this.text.next();
+                if (c == '"')
+                    return value.toString();
+
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+
+                char escaped = this.text.next();
+                if (escaped == CharStream.END)
+                    break;
+
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        StringBuilder hex = new StringBuilder();
+                        while (hex.length() < 4 && this.text.peek() != CharStream.END)
+                            hex.append(this.text.next());
+
+                        try {
+                            if (hex.length() < 4)
+                                throw new NumberFormatException();
+
+                            value.append((char) Integer.parseInt(hex.toString(), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        value.append(escaped);
+                        break;
+                    default:
+                        throw error("Invalid escape character '" + escaped + "'");
+                }
+            }
+
+            throw error("Unterminated string");
+        }
+
+        String literal() {
+            int start = this.text.position();
+            StringBuilder literal = new StringBuilder();
+            while (this.text.peek() != CharStream.END && DELIMITERS.indexOf(this.text.peek()) == -1)
+                literal.append(this.text.next());
+
+            String value = literal.toString();
+            if (!value.equals("true") && !value.equals("false") && !value.equals("null")
+                    && !NUMBER.matcher(value).matches())
+                throw new IllegalArgumentException("Expected a JSON value at position " + start);
+
+            return value;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + this.text.position());
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.tmatek.zhangshasha.batch;
+
+/**
+ * A transformation cost function for the string labels of parsed trees, used by {@link BatchDiff}. It is the string
+ * counterpart of {@link com.github.tmatek.zhangshasha.LabelCostModel}: labels are only interned into integers within a
+ * single pair, so costs of the whole run are given by the labels themselves.
+ */
+public interface LabelCosts {
+
+    /**
+     * A cost function in which every insertion and deletion costs one, renaming a node costs one if the labels
+     * differ and zero otherwise.
+     */
+    LabelCosts UNIT = new LabelCosts() {
+
+        @Override
+        public int deleteCost(String label) {
+            return 1;
+        }
+
+        @Override
+        public int insertCost(String label) {
+            return 1;
+        }
+
+        @Override
+        public int renameCost(String from, String to) {
+            return from.equals(to) ? 0 : 1;
+        }
+    };
+
+    /**
+     * Returns the cost of deleting a node with label {@code label} from the first tree.
+     * @param label the label of the deleted node
+     * @return the cost of deleting the node
+     */
+    int deleteCost(String label);
+
+    /**
+     * Returns the cost of inserting a node with label {@code label} from the second tree.
+     * @param label the label of the inserted node
+     * @return the cost of inserting the node
+     */
+    int insertCost(String label);
+
+    /**
+     * Returns the cost of renaming a node with label {@code from} of the first tree to label {@code to} of the second
+     * tree.
+     * @param from the label of the node in the first tree
+     * @param to the label of the node in the second tree
+     * @return the cost of renaming the node
+     */
+    int renameCost(String from, String to);
+
+}
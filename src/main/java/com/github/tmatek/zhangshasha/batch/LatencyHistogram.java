@@ -0,0 +1,123 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of latencies. Latencies are counted in buckets whose bounds are powers of two nanoseconds,
+ * so percentiles are known within a factor of two at a constant memory cost.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    // bucket b counts latencies of at most 2^b nanoseconds, which are greater than 2^(b - 1) nanoseconds
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong(), total = new AtomicLong(), max = new AtomicLong();
+
+    /**
+     * Records a latency of {@code nanos} nanoseconds.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(long nanos) {
+        nanos = Math.max(nanos, 0);
+        this.counts.incrementAndGet(bucketOf(nanos));
+        this.count.incrementAndGet();
+        this.total.addAndGet(nanos);
+        this.max.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucketOf(long nanos) {
+        return nanos <= 1 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos - 1));
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     * @return the number of recorded latencies
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Returns the sum of all recorded latencies in nanoseconds.
+     * @return the sum of all recorded latencies in nanoseconds
+     */
+    public long getTotalNanos() {
+        return this.total.get();
+    }
+
+    /**
+     * Returns the largest recorded latency in nanoseconds.
+     * @return the largest recorded latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return this.max.get();
+    }
+
+    /**
+     * Returns an upper bound of the latency below which {@code percentile} percent of all recorded latencies lie.
+     * The bound is at most twice the exact percentile and never larger than the largest recorded latency.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the percentile in nanoseconds, or 0 if no latency has been recorded
+     * @throws IllegalArgumentException if {@code percentile} is not between 0 and 100
+     */
+    public long getPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("The percentile must be between 0 and 100");
+
+        long count = 0;
+        for (int b = 0; b < BUCKETS; b++)
+            count += this.counts.get(b);
+
+        long rank = (long) Math.ceil(count * percentile / 100), seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += this.counts.get(b);
+            if (seen > 0 && seen >= rank)
+                return Math.min(upperBound(b), getMaxNanos());
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns a single line summary of the latencies in milliseconds: the count, the mean, the median, the 90th and
+     * 99th percentiles and the maximum.
+     */
+    @Override
+    public String toString() {
+        long count = getCount();
+        return String.format(Locale.ROOT, "count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms", count,
+                count == 0 ? 0 : getTotalNanos() / 1e6 / count, getPercentileNanos(50) / 1e6,
+                getPercentileNanos(90) / 1e6, getPercentileNanos(99) / 1e6, getMaxNanos() / 1e6);
+    }
+
+    /**
+     * Returns the counts of all non-empty buckets, one bucket per line, e.g. <code>&lt;= 1.024ms: 17</code>.
+     *
+     * @return the counts of all non-empty buckets
+     */
+    public String toBucketString() {
+        StringBuilder buckets = new StringBuilder();
+        for (int b = 0; b < BUCKETS; b++) {
+            long count = this.counts.get(b);
+            if (count == 0)
+                continue;
+
+            if (b == BUCKETS - 1)
+                buckets.append(String.format(Locale.ROOT, "  > %.3fms: %d%n", upperBound(b - 1) / 1e6, count));
+            else
+                buckets.append(String.format(Locale.ROOT, "  <= %.3fms: %d%n", upperBound(b) / 1e6, count));
+        }
+
+        return buckets.toString();
+    }
+}
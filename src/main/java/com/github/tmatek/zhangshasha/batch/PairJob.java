@@ -0,0 +1,45 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import com.github.tmatek.zhangshasha.IndexedTree;
+import com.github.tmatek.zhangshasha.LabelDictionary;
+
+import java.nio.file.Path;
+
+/**
+ * A pair of tree files passing through the stages of the pipeline. Every stage fills in its results; once a stage
+ * fails, the remaining stages only pass the error on to the output.
+ */
+final class PairJob {
+
+    /**
+     * Marks the end of the jobs in a queue.
+     */
+    static final PairJob END = new PairJob(null, null, null);
+
+    final String name;
+
+    final Path first, second;
+
+    ParsedTree parsed1, parsed2;
+
+    IndexedTree tree1, tree2;
+
+    // the labels of both trees by their IDs in the indexed trees
+    LabelDictionary dictionary;
+
+    // labels of the nodes of both trees by their postorder IDs, only needed for edit scripts
+    String[] labels1, labels2;
+
+    int distance;
+
+    // the postorder ID of the node of the second tree mapped to every node of the first tree, or -1
+    int[] mapping;
+
+    String error;
+
+    PairJob(String name, Path first, Path second) {
+        this.name = name;
+        this.first = first;
+        this.second = second;
+    }
+}
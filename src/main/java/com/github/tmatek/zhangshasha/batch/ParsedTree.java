@@ -0,0 +1,92 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import com.github.tmatek.zhangshasha.IndexedTree;
+import com.github.tmatek.zhangshasha.IndexedTreeBuilder;
+import com.github.tmatek.zhangshasha.LabelDictionary;
+
+import java.util.Arrays;
+
+/**
+ * A parsed tree with string labels, stored as the labels and depths of its nodes in preorder. The labels are turned
+ * into integers only when both trees of a pair are indexed with the same {@link LabelDictionary}.
+ */
+final class ParsedTree {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] labels = new String[INITIAL_CAPACITY];
+
+    private int[] depths = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Appends a node with label {@code label} at depth {@code depth}; the root has depth 0. The node becomes the last
+     * child of the last appended node of depth {@code depth - 1}.
+     */
+    void add(String label, int depth) {
+        if (this.size == this.labels.length) {
+            this.labels = Arrays.copyOf(this.labels, this.size * 2);
+            this.depths = Arrays.copyOf(this.depths, this.size * 2);
+        }
+
+        this.labels[this.size] = label;
+        this.depths[this.size] = depth;
+        this.size++;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    String getLabel(int node) {
+        return this.labels[node];
+    }
+
+    int getDepth(int node) {
+        return this.depths[node];
+    }
+
+    /**
+     * Returns the labels of the nodes in postorder, i.e. the label of every postorder ID of the indexed tree.
+     */
+    String[] postorderLabels() {
+        String[] postorder = new String[this.size];
+        int[] open = new int[INITIAL_CAPACITY];
+        int depth = 0, id = 0;
+
+        for (int i = 0; i <= this.size; i++) {
+            int next = i == this.size ? 0 : this.depths[i];
+            while (depth > next)
+                postorder[id++] = this.labels[open[--depth]];
+
+            if (i == this.size)
+                break;
+
+            if (depth == open.length)
+                open = Arrays.copyOf(open, depth * 2);
+
+            open[depth++] = i;
+        }
+
+        return postorder;
+    }
+
+    /**
+     * Builds the indexed tree of this tree, interning its labels into dictionary {@code dictionary}.
+     */
+    IndexedTree index(LabelDictionary dictionary) {
+        IndexedTreeBuilder builder = new IndexedTreeBuilder();
+        for (int i = 0; i < this.size; i++) {
+            while (builder.depth() > this.depths[i])
+                builder.endNode();
+
+            builder.startNode(dictionary.intern(this.labels[i]));
+        }
+
+        while (builder.depth() > 0)
+            builder.endNode();
+
+        return builder.build();
+    }
+}
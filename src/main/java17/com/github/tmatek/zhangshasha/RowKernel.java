@@ -0,0 +1,29 @@
+package com.github.tmatek.zhangshasha;
+
+/**
+ * Utility class with the data-parallel part of calculating a row of a forest distance table, for Java 17 and later.
+ * When module {@code jdk.incubator.vector} is present (e.g. with {@code --add-modules jdk.incubator.vector}), rows
+ * are calculated with the Vector API, otherwise with the scalar implementation.
+ */
+final class RowKernel {
+
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private RowKernel() {
+    }
+
+    /**
+     * Calculates {@code min(previous[j] + insert, forests[subforests[j]] + subtrees[j + offset])} into
+     * {@code current[j]} for all columns {@code j} in range [{@code from}, {@code to}).
+     */
+    static void relax(int[] previous, int insert, int[] forests, int[] subforests, int[] subtrees, int offset,
+                      int[] current, int from, int to) {
+        if (VECTORIZED) {
+            VectorRowKernel.relax(previous, insert, forests, subforests, subtrees, offset, current, from, to);
+            return;
+        }
+
+        for (int j = from; j < to; j++)
+            current[j] = Math.min(previous[j] + insert, forests[subforests[j]] + subtrees[j + offset]);
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.tmatek.zhangshasha;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Utility class calculating rows of forest distance tables with the Vector API. It must only be loaded when module
+ * {@code jdk.incubator.vector} is present.
+ */
+final class VectorRowKernel {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    private VectorRowKernel() {
+    }
+
+    static void relax(int[] previous, int insert, int[] forests, int[] subforests, int[] subtrees, int offset,
+                      int[] current, int from, int to) {
+        int j = from;
+        for (int upper = from + SPECIES.loopBound(to - from); j < upper; j += SPECIES.length()) {
+            IntVector inserted = IntVector.fromArray(SPECIES, previous, j).add(insert);
+            IntVector combined = IntVector.fromArray(SPECIES, forests, 0, subforests, j)
+                    .add(IntVector.fromArray(SPECIES, subtrees, j + offset));
+
+            inserted.min(combined).intoArray(current, j);
+        }
+
+        for (; j < to; j++)
+            current[j] = Math.min(previous[j] + insert, forests[subforests[j]] + subtrees[j + offset]);
+    }
+}
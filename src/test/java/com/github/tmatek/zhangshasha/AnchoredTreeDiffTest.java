@@ -0,0 +1,87 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class AnchoredTreeDiffTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private static int cost(List<TreeTransformation> transformations) {
+        int cost = 0;
+        for (TreeTransformation t : transformations)
+            cost += t.getCost();
+
+        return cost;
+    }
+
+    private static void assertDiffTransforms(String a, String b) {
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation(a),
+                t2 = StringTreeNode.fromStringRepresentation(b);
+
+        List<TreeTransformation> transformations = AnchoredTreeDiff.diff(t1, t2, TreeNode::toString);
+        assertTrue(cost(transformations) >= TreeDistance.treeDistanceZhangShasha((TreeNode) t1, (TreeNode) t2));
+
+        TreeDistance.transformTree(t1, transformations);
+        assertEquals(b, t1.toTreeString());
+    }
+
+    public void testValidTransformations() {
+        assertDiffTransforms("a(b(c,d),e(f,g))", "a(b(c,d),e(f,g))");
+        assertDiffTransforms("a(b(c,d),e(f,g))", "a(e(f,g),b(c,d))");
+        assertDiffTransforms("a(b(c,d),x,e(f,g))", "r(b(c,d),y(z),e(f,g))");
+        assertDiffTransforms("a(b(c,d),e(f,g))", "b(c,d)");
+        assertDiffTransforms("a", "a(b(c,d),e(f,g))");
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 200; i++) {
+            assertDiffTransforms(StringTreeNode.randomTree(4, 5, r).toTreeString(),
+                    StringTreeNode.randomTree(4, 5, r).toTreeString());
+        }
+    }
+
+    /**
+     * Returns a random tree with unique labels, so that all of its subtrees are unique.
+     */
+    private static StringTreeNode uniqueTree(int size, Random r) {
+        List<StringTreeNode> nodes = new ArrayList<>();
+        nodes.add(new StringTreeNode("n0"));
+        for (int i = 1; i < size; i++) {
+            StringTreeNode parent = nodes.get(r.nextInt(nodes.size())), child = new StringTreeNode("n" + i);
+            parent.addChild(child);
+            child.setParent(parent);
+            nodes.add(child);
+        }
+
+        return nodes.get(0);
+    }
+
+    private static void collect(TreeNode node, List<StringTreeNode> nodes) {
+        nodes.add((StringTreeNode) node);
+        for (TreeNode child : node.getChildren())
+            collect(child, nodes);
+    }
+
+    public void testAnchoredEdits() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        StringTreeNode t1 = uniqueTree(3000, r),
+                t2 = StringTreeNode.fromStringRepresentation(t1.toTreeString());
+
+        // rename three nodes of the second tree
+        List<StringTreeNode> nodes = new ArrayList<>();
+        collect(t2, nodes);
+        for (int i = 0; i < 3; i++)
+            nodes.get(1 + r.nextInt(nodes.size() - 1)).renameNodeTo(new StringTreeNode("x" + i));
+
+        List<TreeTransformation> transformations = AnchoredTreeDiff.diff(t1, t2, TreeNode::toString);
+        assertEquals(3, cost(transformations));
+
+        TreeDistance.transformTree(t1, transformations);
+        assertEquals(t2.toTreeString(), t1.toTreeString());
+    }
+}
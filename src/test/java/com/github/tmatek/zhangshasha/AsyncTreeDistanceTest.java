@@ -0,0 +1,168 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncTreeDistanceTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private ExecutorService executor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.executor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testMatchesSynchronousCalculation() throws Exception {
+        // a tiny limit runs the calculations one by one
+        AsyncTreeDistance async = new AsyncTreeDistance(this.executor, 1);
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        List<TreeNode> trees = new ArrayList<>();
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            TreeNode t1 = StringTreeNode.randomTree(3, 4, r), t2 = StringTreeNode.randomTree(3, 4, r);
+            trees.add(t1);
+            trees.add(t2);
+            futures.add(async.treeDistance(t1, t2));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(TreeDistance.treeDistanceZhangShasha(trees.get(2 * i), trees.get(2 * i + 1)),
+                    (int) futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(0, async.getUsedMemory());
+        assertEquals(0, async.getWaitingCount());
+    }
+
+    public void testEditScript() throws Exception {
+        AsyncTreeDistance async = new AsyncTreeDistance(this.executor, Long.MAX_VALUE);
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation("a(b(c,d),e)"),
+                t2 = StringTreeNode.fromStringRepresentation("a(c,x(d,e))");
+
+        List<TreeTransformation> transformations = async.treeDistance(t1, t2).get(10, TimeUnit.SECONDS);
+        TreeDistance.transformTree(t1, transformations);
+        assertEquals(t2.toTreeString(), t1.toTreeString());
+    }
+
+    public void testCancellation() throws Exception {
+        IndexedTree t1 = IndexedTree.of(StringTreeNode.fromStringRepresentation("a(b(c,d),e(f))"),
+                node -> node.toString().charAt(0)),
+                t2 = IndexedTree.of(StringTreeNode.fromStringRepresentation("a(c,x(d,e),f)"),
+                        node -> node.toString().charAt(0));
+
+        // a calculation which blocks until it is cancelled
+        CountDownLatch started = new CountDownLatch(1), cancelled = new CountDownLatch(1);
+        AtomicInteger renames = new AtomicInteger();
+        LabelCostModel blocking = new LabelCostModel() {
+            @Override
+            public int deleteCost(int label) {
+                return 1;
+            }
+
+            @Override
+            public int insertCost(int label) {
+                started.countDown();
+                try {
+                    cancelled.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return 1;
+            }
+
+            @Override
+            public int renameCost(int from, int to) {
+                renames.incrementAndGet();
+                return from == to ? 0 : 1;
+            }
+        };
+
+        // the second calculation can only start once the first one releases its memory
+        AsyncTreeDistance async = new AsyncTreeDistance(this.executor, DistanceEstimate.of(t1, t2).getPeakTableBytes());
+        CompletableFuture<Integer> first = async.treeDistance(t1, t2, blocking),
+                second = async.treeDistance(t1, t2, LabelCostModel.UNIT);
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(1, async.getWaitingCount());
+
+        first.cancel(false);
+        cancelled.countDown();
+
+        assertEquals(IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT),
+                (int) second.get(10, TimeUnit.SECONDS));
+        assertTrue(first.isCancelled());
+        assertEquals(0, renames.get());
+    }
+
+    public void testCancelledWaitingCalculation() throws Exception {
+        IndexedTree small = IndexedTree.of(StringTreeNode.fromStringRepresentation("a(b,c)"),
+                node -> node.toString().charAt(0)),
+                large = IndexedTree.of(StringTreeNode.fromStringRepresentation("a(b(c,d),e(f,g),h(i,j))"),
+                        node -> node.toString().charAt(0));
+
+        CountDownLatch started = new CountDownLatch(1), released = new CountDownLatch(1);
+        LabelCostModel blocking = new LabelCostModel() {
+            @Override
+            public int deleteCost(int label) {
+                return 1;
+            }
+
+            @Override
+            public int insertCost(int label) {
+                started.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                return 1;
+            }
+
+            @Override
+            public int renameCost(int from, int to) {
+                return from == to ? 0 : 1;
+            }
+        };
+
+        // two small calculations fit into the limit, but the large one waiting in between does not
+        AsyncTreeDistance async = new AsyncTreeDistance(this.executor,
+                2 * DistanceEstimate.of(small, small).getPeakTableBytes());
+        CompletableFuture<Integer> first = async.treeDistance(small, small, blocking);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Integer> second = async.treeDistance(large, large, LabelCostModel.UNIT),
+                third = async.treeDistance(small, small, LabelCostModel.UNIT);
+        assertEquals(2, async.getWaitingCount());
+
+        // cancelling the large calculation starts the small one while the first one is still running
+        second.cancel(false);
+        assertEquals(0, (int) third.get(10, TimeUnit.SECONDS));
+        assertFalse(first.isDone());
+        assertEquals(0, async.getWaitingCount());
+
+        released.countDown();
+        assertEquals(0, (int) first.get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Random;
+
+public class ConstrainedTreeDistanceTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private static int constrainedDistance(String a, String b) {
+        return ConstrainedTreeDistance.treeDistance((TreeNode) StringTreeNode.fromStringRepresentation(a),
+                (TreeNode) StringTreeNode.fromStringRepresentation(b));
+    }
+
+    private static int treeDistance(String a, String b) {
+        return TreeDistance.treeDistanceZhangShasha((TreeNode) StringTreeNode.fromStringRepresentation(a),
+                (TreeNode) StringTreeNode.fromStringRepresentation(b));
+    }
+
+    public void testTreeDistance() {
+        assertEquals(0, constrainedDistance("a(b)", "a(b)"));
+        assertEquals(1, constrainedDistance("a(c)", "a(d)"));
+        assertEquals(1, constrainedDistance("a(b,c)", "a(b,g)"));
+        assertEquals(2, constrainedDistance("4(1,2,3)", "4(3(1,2))"));
+
+        // disjoint subtrees b(x,y) and z cannot be mapped into overlapping subtrees x and b(y,z)
+        assertEquals(2, treeDistance("a(b(x,y),z)", "a(x,b(y,z))"));
+        assertEquals(4, constrainedDistance("a(b(x,y),z)", "a(x,b(y,z))"));
+    }
+
+    public void testUpperBound() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            String a = StringTreeNode.randomTree(3, 6, r).toTreeString(),
+                    b = StringTreeNode.randomTree(4, 3, r).toTreeString();
+
+            assertTrue(constrainedDistance(a, b) >= treeDistance(a, b));
+            assertEquals(0, constrainedDistance(a, a));
+        }
+    }
+
+    private static void assertTreesMatchAfterTransformation(String a, String b) {
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation(a),
+                t2 = StringTreeNode.fromStringRepresentation(b);
+
+        List<TreeTransformation> tr = ConstrainedTreeDistance.treeDistance(t1, t2);
+
+        int cost = 0;
+        for (TreeTransformation t : tr)
+            cost += t.getCost();
+
+        assertEquals(constrainedDistance(a, b), cost);
+
+        t1 = (StringTreeNode) TreeDistance.transformTree(t1, tr);
+        assertEquals(b, t1.toTreeString());
+    }
+
+    public void testTransformTree() {
+        assertTreesMatchAfterTransformation("4(1,2,3)", "5(3(1,2),4)");
+        assertTreesMatchAfterTransformation("a(b(d,e),c(f,g))", "a(b(c(d,e,f)))");
+        assertTreesMatchAfterTransformation("a(b(c(d(e))))", "a(b(c,d),e(f(i,j),g,h(k)))");
+        assertTreesMatchAfterTransformation("a(b(x,y),z)", "a(x,b(y,z))");
+        assertTreesMatchAfterTransformation("a(d)", "a(b,c,d)");
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            String a = StringTreeNode.randomTree(3, 8, r).toTreeString(),
+                    b = StringTreeNode.randomTree(6, 2, r).toTreeString();
+
+            assertTreesMatchAfterTransformation(a, b);
+            assertTreesMatchAfterTransformation(b, a);
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class DistanceEstimateTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    public void testCells() {
+        // keyroots of A(B(C),D,E(F)) are D, E and A with subtree sizes 1, 2 and 6
+        TreeNode t = StringTreeNode.fromStringRepresentation("A(B(C),D,E(F))");
+        DistanceEstimate estimate = DistanceEstimate.of(t, t);
+
+        assertEquals(81, estimate.getCells());
+        assertEquals(4 * 36, estimate.getTreeTableBytes());
+        assertEquals(4 * 49, estimate.getForestTableBytes());
+    }
+
+    public void testCellsMatchCalculation() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 50; i++) {
+            TreeNode t1 = StringTreeNode.randomTree(4, 6, r), t2 = StringTreeNode.randomTree(6, 3, r);
+
+            DistanceBudget budget = DistanceBudget.unlimited();
+            TreeDistance.treeDistanceZhangShasha(t1, t2, budget);
+
+            assertEquals(budget.getUsedCells(), DistanceEstimate.of(t1, t2).getCells());
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class DistancePlanTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private static IndexedTree index(TreeNode tree) {
+        return IndexedTree.of(tree, node -> node.toString().charAt(0));
+    }
+
+    public void testChoosesCheaperDecomposition() {
+        // every subtree grows towards the right, so left keyroots cover almost every node
+        IndexedTree right = index(StringTreeNode.fromStringRepresentation("a(b,c(d,e(f,g(h,i(j,k)))))"));
+        DistancePlan plan = DistancePlan.of(right, right, new DistanceOptions());
+
+        assertEquals(Decomposition.RIGHT, plan.getDecomposition());
+        assertTrue(plan.getCells(Decomposition.RIGHT) < plan.getCells(Decomposition.LEFT));
+        assertEquals(plan.getCells(), DistanceEstimate.of(right, right).getCells());
+
+        IndexedTree left = right.mirror();
+        assertEquals(Decomposition.LEFT, DistancePlan.of(left, left, new DistanceOptions()).getDecomposition());
+
+        DistanceOptions options = new DistanceOptions();
+        options.setDecomposition(Decomposition.LEFT);
+        assertEquals(Decomposition.LEFT, DistancePlan.of(right, right, options).getDecomposition());
+    }
+
+    public void testCellsMatchCalculation() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 50; i++) {
+            IndexedTree t1 = index(StringTreeNode.randomTree(4, 5, r)), t2 = index(StringTreeNode.randomTree(4, 5, r));
+
+            for (Decomposition decomposition : Decomposition.values()) {
+                DistanceOptions options = new DistanceOptions();
+                options.setDecomposition(decomposition);
+
+                DistanceBudget budget = DistanceBudget.unlimited();
+                IndexedTreeDistance.exactTreeDistance(t1, t2, LabelCostModel.UNIT, budget, options);
+                assertEquals(DistancePlan.of(t1, t2, options).getCells(), budget.getUsedCells());
+            }
+        }
+    }
+
+    public void testDecompositionsAgree() {
+        DistanceOptions left = new DistanceOptions(), right = new DistanceOptions();
+        left.setDecomposition(Decomposition.LEFT);
+        right.setDecomposition(Decomposition.RIGHT);
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            IndexedTree t1 = index(StringTreeNode.randomTree(3, 6, r)), t2 = index(StringTreeNode.randomTree(5, 3, r));
+
+            assertEquals(IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT, left),
+                    IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT, right));
+        }
+    }
+
+    /**
+     * Returns a tree of {@code depth} levels whose subtrees grow towards the right.
+     */
+    private static String rightComb(int depth, String last) {
+        StringBuilder tree = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            tree.append("a(b,");
+
+        tree.append(last);
+        for (int i = 0; i < depth; i++)
+            tree.append(')');
+
+        return tree.toString();
+    }
+
+    public void testBudgetUsesPlannedDecomposition() {
+        IndexedTree t1 = index(StringTreeNode.fromStringRepresentation(rightComb(40, "x"))),
+                t2 = index(StringTreeNode.fromStringRepresentation(rightComb(40, "y")));
+
+        // the budget fits the right decomposition, but the left one is forced
+        DistanceOptions options = new DistanceOptions();
+        options.setDecomposition(Decomposition.LEFT);
+        DistancePlan plan = DistancePlan.of(t1, t2, options);
+        assertTrue(plan.getCells(Decomposition.RIGHT) < plan.getCells());
+
+        // the exact calculation does not fit, so the constrained bound is calculated instead of the root mapping
+        DistanceResult result = IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT,
+                DistanceBudget.withMaxCells(plan.getCells(Decomposition.RIGHT)), options);
+        assertFalse(result.isExact());
+        assertEquals(1, result.getDistance());
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+public class IndexedTreeBuilderTest extends TestCase {
+
+    private Map<String, Integer> labels;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.labels = new HashMap<>();
+    }
+
+    private int label(String name) {
+        return this.labels.computeIfAbsent(name, k -> this.labels.size());
+    }
+
+    public void testBuild() {
+        IndexedTree built = new IndexedTreeBuilder()
+                .startNode(label("A"))
+                .startNode(label("B")).endNode()
+                .startNode(label("C"))
+                .startNode(label("D")).endNode()
+                .endNode()
+                .endNode()
+                .build();
+
+        IndexedTree expected = IndexedTree.of(StringTreeNode.fromStringRepresentation("A(B,C(D))"),
+                node -> label(node.toString()));
+
+        assertEquals(expected.size(), built.size());
+        for (int i = 0; i < built.size(); i++) {
+            assertEquals(expected.getLabel(i), built.getLabel(i));
+            assertEquals(expected.getLeftmostLeaf(i), built.getLeftmostLeaf(i));
+            assertEquals(expected.getParent(i), built.getParent(i));
+        }
+    }
+
+    public void testInvalidSequences() {
+        IndexedTreeBuilder builder = new IndexedTreeBuilder();
+
+        try {
+            builder.endNode();
+            fail("Ending a node without starting it should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        builder.startNode(0);
+        try {
+            builder.build();
+            fail("Building a tree with open nodes should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        builder.endNode();
+        try {
+            builder.startNode(1);
+            fail("Starting a second root should fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(1, builder.build().size());
+        assertEquals(0, builder.size());
+    }
+
+    private IndexedTree parseXml(String xml) throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        IndexedTreeBuilder builder = new IndexedTreeBuilder();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT)
+                builder.startNode(label(reader.getLocalName()));
+            else if (event == XMLStreamConstants.END_ELEMENT)
+                builder.endNode();
+        }
+
+        return builder.build();
+    }
+
+    public void testStreamingParser() throws Exception {
+        IndexedTree t1 = parseXml("<a><b><d/><e/></b><c><f/><g/></c></a>"),
+                t2 = parseXml("<a><b><c><d/><e/><f/></c></b></a>");
+
+        assertEquals(TreeDistance.treeDistanceZhangShasha(
+                (TreeNode) StringTreeNode.fromStringRepresentation("a(b(d,e),c(f,g))"),
+                (TreeNode) StringTreeNode.fromStringRepresentation("a(b(c(d,e,f)))")),
+                IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT));
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class IndexedTreeDistanceTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private Map<String, Integer> labels;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.labels = new HashMap<>();
+    }
+
+    private IndexedTree index(StringTreeNode tree) {
+        return IndexedTree.of(tree, node -> this.labels.computeIfAbsent(node.toString(), k -> this.labels.size()));
+    }
+
+    public void testIndexedTree() {
+        IndexedTree tree = index(StringTreeNode.fromStringRepresentation("A(B(C),D,E(F))"));
+
+        assertEquals(6, tree.size());
+        assertEquals(5, tree.getRoot());
+        assertEquals(-1, tree.getParent(5));
+        assertEquals(1, tree.getParent(0));
+        assertEquals(5, tree.getParent(2));
+        assertEquals(0, tree.getLeftmostLeaf(5));
+        assertEquals(3, tree.getLeftmostLeaf(4));
+
+        assertEquals(3, tree.getKeyrootCount());
+        assertEquals(2, tree.getKeyroot(0));
+        assertEquals(4, tree.getKeyroot(1));
+        assertEquals(5, tree.getKeyroot(2));
+    }
+
+    public void testMirror() {
+        IndexedTree tree = index(StringTreeNode.fromStringRepresentation("A(B(C),D,E(F))")),
+                mirrored = index(StringTreeNode.fromStringRepresentation("A(E(F),D,B(C))"));
+
+        assertSameTree(mirrored, tree.mirror());
+        assertSameTree(tree, tree.mirror().mirror());
+    }
+
+    private static void assertSameTree(IndexedTree expected, IndexedTree actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getKeyrootCount(), actual.getKeyrootCount());
+        for (int j = 0; j < expected.size(); j++) {
+            assertEquals(expected.getLabel(j), actual.getLabel(j));
+            assertEquals(expected.getLeftmostLeaf(j), actual.getLeftmostLeaf(j));
+            assertEquals(expected.getParent(j), actual.getParent(j));
+        }
+    }
+
+    private void assertDistanceMatches(String a, String b) {
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation(a),
+                t2 = StringTreeNode.fromStringRepresentation(b);
+
+        assertEquals(TreeDistance.treeDistanceZhangShasha((TreeNode) t1, (TreeNode) t2),
+                IndexedTreeDistance.treeDistance(index(t1), index(t2), LabelCostModel.UNIT));
+    }
+
+    public void testTreeDistance() {
+        assertDistanceMatches("a(b)", "a(b)");
+        assertDistanceMatches("a(c)", "a(d)");
+        assertDistanceMatches("4(1,2,3)", "4(3(1,2))");
+        assertDistanceMatches("a(b(d,e),c(f,g))", "a(b(c(d,e,f)))");
+        assertDistanceMatches("a(b)", "b");
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            assertDistanceMatches(StringTreeNode.randomTree(3, 8, r).toTreeString(),
+                    StringTreeNode.randomTree(6, 2, r).toTreeString());
+        }
+    }
+
+    private void assertSameTables(IndexedTree t1, IndexedTree t2, DistanceOptions options) {
+        try (TreeDistanceComputation expected = new TreeDistanceComputation(t1, t2, LabelCostModel.UNIT, null, null);
+             TreeDistanceComputation actual = new TreeDistanceComputation(t1, t2, LabelCostModel.UNIT, null, options)) {
+
+            assertEquals(expected.run(), actual.run());
+            for (int i = 0; i < t2.size(); i++) {
+                for (int j = 0; j < t1.size(); j++)
+                    assertEquals(expected.treeDistances().get(i, j), actual.treeDistances().get(i, j));
+            }
+        }
+    }
+
+    public void testParallelTreeDistance() {
+        DistanceOptions parallel = new DistanceOptions();
+        parallel.setParallelThreshold(0);
+        parallel.setTileSize(3);
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 50; i++)
+            assertSameTables(index(StringTreeNode.randomTree(4, 5, r)), index(StringTreeNode.randomTree(4, 5, r)),
+                    parallel);
+    }
+
+    public void testOffHeapTreeDistance() {
+        DistanceOptions offHeap = new DistanceOptions();
+        offHeap.setOffHeapThreshold(0);
+
+        DistanceOptions parallelOffHeap = new DistanceOptions();
+        parallelOffHeap.setOffHeapThreshold(0);
+        parallelOffHeap.setParallelThreshold(0);
+        parallelOffHeap.setTileSize(4);
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 20; i++) {
+            IndexedTree t1 = index(StringTreeNode.randomTree(4, 5, r)), t2 = index(StringTreeNode.randomTree(4, 5, r));
+            assertSameTables(t1, t2, offHeap);
+            assertSameTables(t1, t2, parallelOffHeap);
+        }
+    }
+
+    public void testSubtreeDistanceCache() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+
+        // trees assembled from a few recurring subtrees
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < 4; i++)
+            parts.add(StringTreeNode.randomTree(3, 3, r).toTreeString());
+
+        List<IndexedTree> trees = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            trees.add(index(StringTreeNode.fromStringRepresentation("r(" + parts.get(r.nextInt(4)) + ","
+                    + parts.get(r.nextInt(4)) + "," + parts.get(r.nextInt(4)) + ")")));
+        }
+
+        SubtreeDistanceCache cache = new SubtreeDistanceCache(1000), small = new SubtreeDistanceCache(2);
+        DistanceOptions cached = new DistanceOptions(), smallCached = new DistanceOptions();
+        cached.setCache(cache);
+        smallCached.setCache(small);
+
+        for (IndexedTree t1 : trees) {
+            for (IndexedTree t2 : trees) {
+                int expected = IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT);
+                assertEquals(expected, IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT, cached));
+                assertEquals(expected, IndexedTreeDistance.treeDistance(t1, t2, LabelCostModel.UNIT, smallCached));
+            }
+        }
+
+        assertTrue(cache.getHitCount() > 0);
+        assertTrue(cache.getMissCount() > 0);
+        assertEquals(cache.getMissCount(), cache.size());
+        assertEquals(0, cache.getEvictionCount());
+
+        assertEquals(2, small.size());
+        assertTrue(small.getEvictionCount() > 0);
+    }
+
+    private static List<Element> childElements(Element element) {
+        List<Element> children = new ArrayList<>();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element)
+                children.add((Element) child);
+        }
+
+        return children;
+    }
+
+    private IndexedTree indexXml(String xml) throws Exception {
+        Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new InputSource(new StringReader(xml))).getDocumentElement();
+
+        return IndexedTree.of(root, IndexedTreeDistanceTest::childElements,
+                element -> this.labels.computeIfAbsent(element.getTagName(), k -> this.labels.size()));
+    }
+
+    public void testForeignTrees() throws Exception {
+        IndexedTree xml1 = indexXml("<a><b/><c><d/></c></a>"),
+                xml2 = indexXml("<a><c><b/><d/></c><e/></a>");
+
+        assertTrue(xml1.size() == 4 && xml2.size() == 5);
+        assertEquals(TreeDistance.treeDistanceZhangShasha(
+                (TreeNode) StringTreeNode.fromStringRepresentation("a(b,c(d))"),
+                (TreeNode) StringTreeNode.fromStringRepresentation("a(c(b,d),e)")),
+                IndexedTreeDistance.treeDistance(xml1, xml2, LabelCostModel.UNIT));
+    }
+
+}
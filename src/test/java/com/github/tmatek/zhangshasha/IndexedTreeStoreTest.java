@@ -0,0 +1,80 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class IndexedTreeStoreTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private Path file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.file = Files.createTempFile("indexed-trees", ".bin");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(this.file);
+        super.tearDown();
+    }
+
+    private static void assertTreesEqual(IndexedTree expected, IndexedTree actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getKeyrootCount(), actual.getKeyrootCount());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getLabel(i), actual.getLabel(i));
+            assertEquals(expected.getLeftmostLeaf(i), actual.getLeftmostLeaf(i));
+            assertEquals(expected.getParent(i), actual.getParent(i));
+        }
+
+        for (int i = 0; i < expected.getKeyrootCount(); i++)
+            assertEquals(expected.getKeyroot(i), actual.getKeyroot(i));
+    }
+
+    public void testWriteAndOpen() throws IOException {
+        Map<String, Integer> labels = new HashMap<>();
+        List<IndexedTree> trees = new ArrayList<>();
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 50; i++) {
+            trees.add(IndexedTree.of(StringTreeNode.randomTree(4, 5, r),
+                    node -> labels.computeIfAbsent(node.toString(), k -> labels.size())));
+        }
+
+        IndexedTreeStore.write(this.file, trees);
+
+        try (IndexedTreeStore store = IndexedTreeStore.open(this.file)) {
+            assertEquals(trees.size(), store.size());
+
+            for (int i = 0; i < trees.size(); i++)
+                assertTreesEqual(trees.get(i), store.get(i));
+
+            for (int i = 1; i < trees.size(); i++) {
+                assertEquals(IndexedTreeDistance.treeDistance(trees.get(i - 1), trees.get(i), LabelCostModel.UNIT),
+                        IndexedTreeDistance.treeDistance(store.get(i - 1), store.get(i), LabelCostModel.UNIT));
+            }
+        }
+    }
+
+    public void testEmptyStore() throws IOException {
+        IndexedTreeStore.write(this.file, new ArrayList<>());
+
+        try (IndexedTreeStore store = IndexedTreeStore.open(this.file)) {
+            assertEquals(0, store.size());
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.github.tmatek.zhangshasha;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A simple immutable tree node holding a string as its label.
+ */
+public class PersistentStringTreeNode implements PersistentTreeNode {
+
+    /**
+     * Creates a persistent copy of the string tree <code>tree</code>.
+     * @param tree the string tree
+     * @return a persistent string tree
+     */
+    public static PersistentStringTreeNode of(StringTreeNode tree) {
+        List<PersistentTreeNode> children = new ArrayList<>();
+        for (TreeNode child : tree.getChildren())
+            children.add(of((StringTreeNode) child));
+
+        return new PersistentStringTreeNode(tree.toString(), children);
+    }
+
+    private final String label;
+
+    private final List<PersistentTreeNode> children;
+
+    public PersistentStringTreeNode(String label, List<PersistentTreeNode> children) {
+        this.label = label;
+        this.children = Collections.unmodifiableList(new ArrayList<>(children));
+    }
+
+    @Override
+    public List<? extends TreeNode> getChildren() {
+        return this.children;
+    }
+
+    @Override
+    public TreeNode getParent() {
+        return null;
+    }
+
+    @Override
+    public int positionOfChild(TreeNode child) {
+        for (int i = 0; i < this.children.size(); i++) {
+            if (this.children.get(i) == child)
+                return i;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int getTransformationCost(TreeOperation operation, TreeNode other) {
+        switch (operation) {
+            case OP_DELETE_NODE:
+                return 1;
+
+            case OP_INSERT_NODE:
+                return 1;
+
+            default:
+                return this.label.equals(((PersistentStringTreeNode) other).label) ? 0 : 1;
+        }
+    }
+
+    @Override
+    public PersistentTreeNode withChildren(List<PersistentTreeNode> children) {
+        return new PersistentStringTreeNode(this.label, children);
+    }
+
+    @Override
+    public PersistentTreeNode withLabelOf(PersistentTreeNode other) {
+        String label = ((PersistentStringTreeNode) other).label;
+        return this.label.equals(label) ? this : new PersistentStringTreeNode(label, this.children);
+    }
+
+    @Override
+    public String toString() {
+        return this.label;
+    }
+
+    public String toTreeString() {
+        StringBuilder sb = new StringBuilder(this.label);
+
+        if (this.children.size() > 0)
+            sb.append("(");
+
+        for (int i = 0; i < this.children.size(); i++) {
+            if (i > 0)
+                sb.append(",");
+
+            sb.append(((PersistentStringTreeNode) this.children.get(i)).toTreeString());
+        }
+
+        if (this.children.size() > 0)
+            sb.append(")");
+
+        return sb.toString();
+    }
+}
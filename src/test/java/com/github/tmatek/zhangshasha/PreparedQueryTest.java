@@ -0,0 +1,97 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PreparedQueryTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private static IndexedTree index(TreeNode tree) {
+        return IndexedTree.of(tree, node -> node.toString().charAt(0));
+    }
+
+    private static List<IndexedTree> candidates(Random r) {
+        // candidates of growing and shrinking sizes, so kept tables are both grown and reused
+        List<IndexedTree> candidates = new ArrayList<>();
+        for (int i = 0; i < 60; i++)
+            candidates.add(index(StringTreeNode.randomTree(1 + i % 5, 1 + (i * 7) % 6, r)));
+
+        return candidates;
+    }
+
+    public void testMatchesTreeDistance() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int q = 0; q < 5; q++) {
+            IndexedTree query = index(StringTreeNode.randomTree(3, 5, r));
+            List<IndexedTree> candidates = candidates(r);
+            PreparedQuery prepared = new PreparedQuery(query, LabelCostModel.UNIT);
+
+            int[] distances = prepared.treeDistances(candidates);
+            assertEquals(candidates.size(), distances.length);
+            for (int i = 0; i < candidates.size(); i++) {
+                assertEquals(IndexedTreeDistance.treeDistance(query, candidates.get(i), LabelCostModel.UNIT),
+                        distances[i]);
+            }
+        }
+    }
+
+    public void testParallelStream() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        IndexedTree query = index(StringTreeNode.randomTree(4, 4, r));
+        List<IndexedTree> candidates = candidates(r);
+
+        PreparedQuery prepared = new PreparedQuery(query, LabelCostModel.UNIT);
+        int[] expected = prepared.treeDistances(candidates);
+        int[] actual = prepared.treeDistances(candidates.parallelStream()).toArray();
+
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], actual[i]);
+    }
+
+    public void testFixedDecomposition() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        IndexedTree query = index(StringTreeNode.randomTree(3, 5, r));
+        List<IndexedTree> candidates = candidates(r);
+
+        DistanceOptions left = new DistanceOptions(), right = new DistanceOptions();
+        left.setDecomposition(Decomposition.LEFT);
+        right.setDecomposition(Decomposition.RIGHT);
+        PreparedQuery leftQuery = new PreparedQuery(query, LabelCostModel.UNIT, left),
+                rightQuery = new PreparedQuery(query, LabelCostModel.UNIT, right);
+
+        for (IndexedTree candidate : candidates)
+            assertEquals(leftQuery.treeDistance(candidate), rightQuery.treeDistance(candidate));
+    }
+
+    public void testRetainedCells() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        IndexedTree query = index(StringTreeNode.randomTree(3, 5, r));
+        List<IndexedTree> candidates = candidates(r);
+
+        PreparedQuery prepared = new PreparedQuery(query, LabelCostModel.UNIT);
+        int[] expected = prepared.treeDistances(candidates);
+        assertTrue(prepared.retainedTableCells() > 0);
+
+        // tables larger than the retained size are allocated per calculation
+        PreparedQuery limited = new PreparedQuery(query, LabelCostModel.UNIT);
+        limited.setRetainedCells(0);
+        int[] actual = limited.treeDistances(candidates);
+        assertEquals(0, limited.retainedTableCells());
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], actual[i]);
+
+        long cells = (long) (query.size() + 1) * (candidates.get(0).size() + 1);
+        limited.setRetainedCells(cells);
+        limited.treeDistances(candidates);
+        assertTrue(limited.retainedTableCells() > 0 && limited.retainedTableCells() <= cells);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class SubtreeSearchTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private Map<String, Integer> labels;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.labels = new HashMap<>();
+    }
+
+    private IndexedTree index(TreeNode tree) {
+        return IndexedTree.of(tree, node -> this.labels.computeIfAbsent(node.toString(), k -> this.labels.size()));
+    }
+
+    private static void postorder(TreeNode node, List<TreeNode> nodes) {
+        for (TreeNode child : node.getChildren())
+            postorder(child, nodes);
+
+        nodes.add(node);
+    }
+
+    /**
+     * Returns the distances between the pattern and every subtree of the document, calculated one by one.
+     */
+    private List<SubtreeMatch> allMatches(TreeNode pattern, TreeNode document) {
+        List<TreeNode> nodes = new ArrayList<>();
+        postorder(document, nodes);
+
+        List<SubtreeMatch> matches = new ArrayList<>();
+        for (int l = 0; l < nodes.size(); l++) {
+            matches.add(new SubtreeMatch(l, IndexedTreeDistance.treeDistance(index(pattern), index(nodes.get(l)),
+                    LabelCostModel.UNIT)));
+        }
+
+        Collections.sort(matches);
+        return matches;
+    }
+
+    public void testBestMatches() {
+        TreeNode pattern = StringTreeNode.fromStringRepresentation("b(c,d)"),
+                document = StringTreeNode.fromStringRepresentation("a(b(c),x(b(c,d)),b(c,e,d))");
+
+        List<SubtreeMatch> best = SubtreeSearch.bestMatches(index(pattern), index(document), LabelCostModel.UNIT, 2);
+        assertEquals(2, best.size());
+        assertEquals(new SubtreeMatch(4, 0), best.get(0));
+        assertEquals(1, best.get(1).getDistance());
+
+        assertTrue(SubtreeSearch.bestMatches(index(pattern), index(document), LabelCostModel.UNIT, 0).isEmpty());
+    }
+
+    public void testMatchesAllSubtrees() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 30; i++) {
+            TreeNode pattern = StringTreeNode.randomTree(2, 3, r), document = StringTreeNode.randomTree(5, 4, r);
+
+            List<SubtreeMatch> streamed = new ArrayList<>();
+            SubtreeSearch.forEachMatch(index(pattern), index(document), LabelCostModel.UNIT, streamed::add);
+            Collections.sort(streamed);
+
+            List<SubtreeMatch> expected = allMatches(pattern, document);
+            assertEquals(expected, streamed);
+            assertEquals(expected.subList(0, Math.min(5, expected.size())),
+                    SubtreeSearch.bestMatches(index(pattern), index(document), LabelCostModel.UNIT, 5));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TreeCorpusTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private static void assertSameTree(IndexedTree expected, IndexedTree actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getKeyrootCount(), actual.getKeyrootCount());
+        for (int j = 0; j < expected.size(); j++) {
+            assertEquals(expected.getLabel(j), actual.getLabel(j));
+            assertEquals(expected.getLeftmostLeaf(j), actual.getLeftmostLeaf(j));
+            assertEquals(expected.getParent(j), actual.getParent(j));
+        }
+    }
+
+    public void testSharedSubtrees() {
+        TreeCorpus corpus = new TreeCorpus();
+        int first = corpus.add(StringTreeNode.fromStringRepresentation("a(b(c,d),b(c,d),e)"), TreeNode::toString);
+
+        // a, b(c,d), c, d and e
+        assertEquals(5, corpus.getStoredNodeCount());
+        assertEquals(8, corpus.getTreeSize(first));
+
+        int second = corpus.add(StringTreeNode.fromStringRepresentation("x(b(c,d),e)"), TreeNode::toString);
+        assertEquals(6, corpus.getStoredNodeCount());
+        assertEquals(13, corpus.getTotalNodeCount());
+        assertEquals(2, corpus.size());
+        assertEquals(6, corpus.getLabels().size());
+        assertEquals("b", corpus.getLabels().labelOf(corpus.getTree(second).getLabel(2)));
+
+        // the same tree is not stored again
+        corpus.add(StringTreeNode.fromStringRepresentation("x(b(c,d),e)"), TreeNode::toString);
+        assertEquals(6, corpus.getStoredNodeCount());
+    }
+
+    public void testExpandedTrees() {
+        TreeCorpus corpus = new TreeCorpus();
+        LabelDictionary labels = corpus.getLabels();
+        List<IndexedTree> trees = new ArrayList<>();
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 200; i++) {
+            StringTreeNode tree = StringTreeNode.randomTree(4, 4, r);
+            trees.add(IndexedTree.of(tree, node -> labels.intern(node.toString())));
+            assertEquals(i, corpus.add(tree, TreeNode::toString));
+        }
+
+        assertTrue(corpus.getStoredNodeCount() < corpus.getTotalNodeCount());
+        for (int i = 0; i < trees.size(); i++)
+            assertSameTree(trees.get(i), corpus.getTree(i));
+
+        for (int i = 0; i + 1 < trees.size(); i += 7) {
+            assertEquals(IndexedTreeDistance.treeDistance(trees.get(i), trees.get(i + 1), LabelCostModel.UNIT),
+                    corpus.treeDistance(i, i + 1, LabelCostModel.UNIT));
+        }
+    }
+}
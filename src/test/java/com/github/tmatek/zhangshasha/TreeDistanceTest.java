@@ -7,6 +7,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 public class TreeDistanceTest extends TestCase {
 
@@ -141,4 +143,246 @@ public class TreeDistanceTest extends TestCase {
         }
     }
 
+    public void testTreeDistanceMatchesTransformations() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            StringTreeNode t1 = StringTreeNode.randomTree(3, 8, r), t2 = StringTreeNode.randomTree(6, 2, r);
+            assertEquals(treeDistance(TreeDistance.treeDistanceZhangShasha(t1, t2)),
+                    TreeDistance.treeDistanceZhangShasha((TreeNode) t1, (TreeNode) t2));
+        }
+    }
+
+    private static void assertDecompositionTransforms(String a, String b, Decomposition decomposition) {
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation(a),
+                t2 = StringTreeNode.fromStringRepresentation(b);
+
+        List<TreeTransformation> tr = TreeDistance.editScript(t1, t2, decomposition);
+        assertEquals(TreeDistance.treeDistanceZhangShasha((TreeNode) t1, (TreeNode) t2), treeDistance(tr));
+
+        t1 = (StringTreeNode) TreeDistance.transformTree(t1, tr);
+        assertEquals(b, t1.toTreeString());
+    }
+
+    public void testDecompositionTransformations() {
+        for (Decomposition decomposition : Decomposition.values()) {
+            assertDecompositionTransforms("a(b,c(d,e(f,g)))", "a(c(d,x(e(f,g))),b)", decomposition);
+            assertDecompositionTransforms("a(b(c,d),e(f(i,j),g,h(k)))", "a(b(c(d(e))))", decomposition);
+            assertDecompositionTransforms("a(d)", "a(b,c,d)", decomposition);
+        }
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            String a = StringTreeNode.randomTree(3, 8, r).toTreeString(),
+                    b = StringTreeNode.randomTree(6, 2, r).toTreeString();
+
+            assertDecompositionTransforms(a, b, Decomposition.LEFT);
+            assertDecompositionTransforms(a, b, Decomposition.RIGHT);
+            assertDecompositionTransforms(b, a, null);
+        }
+
+        // null chooses the cheaper decomposition
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation("a(b,c(d,e(f,g)))"),
+                t2 = StringTreeNode.fromStringRepresentation("a(c(d,x(e(f,g))),b)");
+        assertEquals(treeDistance(TreeDistance.editScript(t1, t2, Decomposition.LEFT)),
+                treeDistance(TreeDistance.editScript(t1, t2, null)));
+    }
+
+    private static int moveCount(List<TreeTransformation> transformations) {
+        int moves = 0;
+        for (TreeTransformation t : transformations) {
+            if (t.getOperation() == TreeOperation.OP_MOVE_SUBTREE)
+                moves++;
+        }
+
+        return moves;
+    }
+
+    private static int assertCompactedTransforms(String a, String b, Decomposition decomposition) {
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation(a),
+                t2 = StringTreeNode.fromStringRepresentation(b);
+
+        List<TreeTransformation> tr = decomposition == null ? TreeDistance.treeDistanceZhangShasha(t1, t2)
+                : TreeDistance.editScript(t1, t2, decomposition);
+        List<TreeTransformation> compacted = TreeDistance.compactMoves(tr);
+        assertEquals(treeDistance(tr), treeDistance(compacted));
+        assertTrue(compacted.size() <= tr.size());
+
+        // grouping by labels finds the same moves
+        List<TreeTransformation> labeled = TreeDistance.compactMoves(tr, TreeNode::toString);
+        assertEquals(treeDistance(compacted), treeDistance(labeled));
+        assertEquals(moveCount(compacted), moveCount(labeled));
+
+        t1 = (StringTreeNode) TreeDistance.transformTree(t1, compacted);
+        assertEquals(b, t1.toTreeString());
+        return moveCount(compacted);
+    }
+
+    public void testCompactedMoves() {
+        StringTreeNode t1 = StringTreeNode.fromStringRepresentation("a(b(c,d),e(f,g))"),
+                t2 = StringTreeNode.fromStringRepresentation("a(e(f,g),b(c,d))");
+
+        // the subtree b(c,d) is deleted and inserted again after e(f,g)
+        List<TreeTransformation> tr = TreeDistance.compactMoves(TreeDistance.treeDistanceZhangShasha(t1, t2));
+        assertEquals(1, moveCount(tr));
+        assertEquals(6, treeDistance(tr));
+
+        TreeNode moved = t1.getChildren().get(0);
+        t1 = (StringTreeNode) TreeDistance.transformTree(t1, tr);
+        assertEquals("a(e(f,g),b(c,d))", t1.toTreeString());
+        assertSame(moved, t1.getChildren().get(1));
+
+        assertCompactedTransforms("a(b(c(d,e)),f)", "a(b,f(c(d,e)))", null);
+        assertEquals(0, assertCompactedTransforms("a(b(c,d),e)", "a(b(c,x),e)", null));
+
+        int moves = 0;
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            String x = StringTreeNode.randomTree(3, 4, r).toTreeString(),
+                    y = StringTreeNode.randomTree(3, 4, r).toTreeString();
+
+            moves += assertCompactedTransforms("r(" + x + "," + y + ")", "r(" + y + "," + x + ")", null);
+            assertCompactedTransforms("r(" + x + "," + y + ")", "r(s(" + y + "," + x + "))", Decomposition.RIGHT);
+            assertCompactedTransforms(x, y, Decomposition.LEFT);
+        }
+
+        assertTrue(moves > 0);
+
+        // a moved subtree with many deleted leaves of distinct labels
+        StringBuilder x = new StringBuilder("x("), y = new StringBuilder("y(");
+        for (int i = 0; i < 200; i++)
+            x.append(i == 0 ? "" : ",").append("l").append(i);
+
+        for (int i = 0; i < 20; i++)
+            y.append(i == 0 ? "" : ",").append("m").append(i);
+
+        x.append(")");
+        y.append(")");
+        assertEquals(1, assertCompactedTransforms("a(" + x + "," + y + ")", "a(" + y + "," + x + ")", null));
+    }
+
+    private static PersistentStringTreeNode persistent(String tree) {
+        return PersistentStringTreeNode.of(StringTreeNode.fromStringRepresentation(tree));
+    }
+
+    private static void assertPersistentTransforms(String a, String b) {
+        PersistentStringTreeNode t1 = persistent(a), t2 = persistent(b);
+        List<TreeTransformation> transformations = TreeDistance.treeDistanceZhangShasha(t1, t2);
+
+        // applying the transformations does not change the original tree, so they can be applied again
+        PersistentTreeNode first = TreeDistance.transformTree(t1, transformations),
+                second = TreeDistance.transformTree(t1, transformations);
+        assertEquals(b, ((PersistentStringTreeNode) first).toTreeString());
+        assertEquals(b, ((PersistentStringTreeNode) second).toTreeString());
+        assertEquals(a, t1.toTreeString());
+
+        int cost = 0;
+        for (TreeTransformation t : transformations)
+            cost += t.getCost();
+
+        assertEquals(TreeDistance.treeDistanceZhangShasha((TreeNode) t1, (TreeNode) t2), cost);
+    }
+
+    public void testPersistentTransformations() {
+        assertPersistentTransforms("a(b,c(d,e(f,g)))", "a(c(d,x(e(f,g))),b)");
+        assertPersistentTransforms("a(b(c,d),e(f(i,j),g,h(k)))", "x(b(c(d(e))))");
+        assertPersistentTransforms("a(d)", "a(b,c,d)");
+        assertPersistentTransforms("a(b(c,d),e)", "r(a(b(c,d),e))");
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            assertPersistentTransforms(StringTreeNode.randomTree(3, 6, r).toTreeString(),
+                    StringTreeNode.randomTree(4, 4, r).toTreeString());
+        }
+    }
+
+    public void testPersistentStructuralSharing() {
+        PersistentStringTreeNode t1 = persistent("a(b(c,d),e(f,g),h(i(j)))"),
+                t2 = persistent("a(b(c,d),e(f,x),h(i(j)))");
+
+        PersistentTreeNode result = TreeDistance.transformTree(t1, TreeDistance.treeDistanceZhangShasha(t1, t2));
+        assertEquals("a(b(c,d),e(f,x),h(i(j)))", ((PersistentStringTreeNode) result).toTreeString());
+
+        // only the renamed node and its ancestors are new
+        assertNotSame(t1, result);
+        assertSame(t1.getChildren().get(0), result.getChildren().get(0));
+        assertSame(t1.getChildren().get(2), result.getChildren().get(2));
+        assertNotSame(t1.getChildren().get(1), result.getChildren().get(1));
+        assertSame(t1.getChildren().get(1).getChildren().get(0), result.getChildren().get(1).getChildren().get(0));
+
+        // an identical tree is not copied at all
+        assertSame(t1, TreeDistance.transformTree(t1, TreeDistance.treeDistanceZhangShasha(t1, persistent(
+                "a(b(c,d),e(f,g),h(i(j)))"))));
+    }
+
+    public void testPersistentCompactedMoves() {
+        PersistentStringTreeNode t1 = persistent("a(b(c,d),e(f,g))"), t2 = persistent("a(e(f,g),b(c,d))");
+
+        List<TreeTransformation> tr = TreeDistance.compactMoves(TreeDistance.treeDistanceZhangShasha(t1, t2));
+        assertEquals(1, moveCount(tr));
+
+        // the moved subtree is shared with the original tree
+        PersistentTreeNode result = TreeDistance.transformTree(t1, tr);
+        assertEquals("a(e(f,g),b(c,d))", ((PersistentStringTreeNode) result).toTreeString());
+        assertEquals("a(b(c,d),e(f,g))", t1.toTreeString());
+        assertSame(t1.getChildren().get(0), result.getChildren().get(1));
+        assertSame(t1.getChildren().get(1), result.getChildren().get(0));
+    }
+
+    public void testBudgetedTreeDistance() {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 20; i++) {
+            TreeNode t1 = StringTreeNode.randomTree(4, 6, r), t2 = StringTreeNode.randomTree(4, 6, r);
+            int exact = TreeDistance.treeDistanceZhangShasha(t1, t2);
+
+            DistanceResult result = TreeDistance.treeDistanceZhangShasha(t1, t2, DistanceBudget.withDeadline(1,
+                    TimeUnit.MINUTES));
+            assertTrue(result.isExact());
+            assertEquals(exact, result.getDistance());
+
+            result = TreeDistance.treeDistanceZhangShasha(t1, t2, DistanceBudget.withMaxCells(0));
+            assertFalse(result.isExact());
+            assertTrue(result.getDistance() >= exact);
+        }
+    }
+
+    public void testCancelledTreeDistance() {
+        DistanceBudget budget = DistanceBudget.unlimited();
+        budget.cancel();
+
+        try {
+            TreeDistance.treeDistanceZhangShasha(StringTreeNode.fromStringRepresentation("a(b,c)"),
+                    (TreeNode) StringTreeNode.fromStringRepresentation("a(b)"), budget);
+            fail("A cancelled calculation should throw CancellationException");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    public void testInterruptedTreeDistance() {
+        TreeNode t1 = StringTreeNode.fromStringRepresentation("a(b(c,d),e)"),
+                t2 = StringTreeNode.fromStringRepresentation("a(c,x(d,e))");
+        int distance = TreeDistance.treeDistanceZhangShasha(t1, t2);
+
+        // only calculations with an explicit budget are cancelled by interrupts
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(distance, TreeDistance.treeDistanceZhangShasha(t1, t2));
+            assertTrue(Thread.currentThread().isInterrupted());
+
+            try {
+                TreeDistance.treeDistanceZhangShasha(t1, t2, DistanceBudget.unlimited());
+                fail("An interrupted calculation with a budget should throw CancellationException");
+            } catch (CancellationException e) {
+                // expected
+            }
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
 }
@@ -0,0 +1,89 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+public class TreeSimilarityJoinTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private Map<String, Integer> labels;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.labels = new HashMap<>();
+    }
+
+    private List<IndexedTree> randomTrees(int count, Random r) {
+        List<IndexedTree> trees = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // a small alphabet, so that similar trees are common
+            String tree = StringTreeNode.randomTree(2 + r.nextInt(2), 3, r).toTreeString();
+            trees.add(IndexedTree.of(StringTreeNode.fromStringRepresentation(tree), node ->
+                    this.labels.computeIfAbsent(String.valueOf((node.toString().charAt(0) - 'a') % 3),
+                            k -> this.labels.size())));
+        }
+
+        return trees;
+    }
+
+    public void testJoinMatchesAllPairs() throws Exception {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        List<IndexedTree> first = randomTrees(40, r), second = randomTrees(50, r);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            for (int threshold = 0; threshold <= 4; threshold += 2) {
+                Set<TreePair> expected = new HashSet<>();
+                for (int i = 0; i < first.size(); i++) {
+                    for (int j = 0; j < second.size(); j++) {
+                        int distance = IndexedTreeDistance.treeDistance(first.get(i), second.get(j),
+                                LabelCostModel.UNIT);
+                        if (distance <= threshold)
+                            expected.add(new TreePair(i, j, distance));
+                    }
+                }
+
+                // a small queue exercises waiting for the consumer
+                TreeSimilarityJoin join = new TreeSimilarityJoin(LabelCostModel.UNIT, 1);
+                join.setQueueCapacity(2);
+                join.setPool(pool);
+
+                Set<TreePair> actual = new HashSet<>();
+                join.join(first, second, threshold, actual::add);
+                assertEquals(expected, actual);
+
+                Set<TreePair> unfiltered = new HashSet<>();
+                new TreeSimilarityJoin(LabelCostModel.UNIT, 0).join(first, second, threshold, unfiltered::add);
+                assertEquals(expected, unfiltered);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testConsumerFailure() throws Exception {
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        List<IndexedTree> trees = randomTrees(30, r);
+
+        try {
+            new TreeSimilarityJoin(LabelCostModel.UNIT, 1).join(trees, trees, 100, pair -> {
+                throw new IllegalStateException("consumer failed");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("consumer failed", e.getMessage());
+        }
+    }
+}
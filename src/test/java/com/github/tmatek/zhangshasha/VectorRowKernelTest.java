@@ -0,0 +1,59 @@
+package com.github.tmatek.zhangshasha;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Method;
+import java.util.Random;
+
+public class VectorRowKernelTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random rows
+
+    private static int[] randomRow(int length, int bound, Random r) {
+        int[] row = new int[length];
+        for (int i = 0; i < length; i++)
+            row[i] = r.nextInt(bound);
+
+        return row;
+    }
+
+    /**
+     * Returns the relax method of the Vector API kernel, which is only compiled into the Java 17 layer of the
+     * multi-release JAR, or {@code null} on older Java versions.
+     */
+    private static Method vectorRelax() throws Exception {
+        if (!System.getProperty("java.specification.version").matches("\\d{2,}")
+                || Integer.parseInt(System.getProperty("java.specification.version")) < 17)
+            return null;
+
+        Method relax = Class.forName("com.github.tmatek.zhangshasha.VectorRowKernel").getDeclaredMethod("relax",
+                int[].class, int.class, int[].class, int[].class, int[].class, int.class, int[].class, int.class,
+                int.class);
+        relax.setAccessible(true);
+        return relax;
+    }
+
+    public void testMatchesScalarRows() throws Exception {
+        Method relax = vectorRelax();
+        if (relax == null)
+            return;
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 500; i++) {
+            int length = 1 + r.nextInt(100), offset = r.nextInt(10), insert = r.nextInt(5);
+            int from = r.nextInt(length), to = from + r.nextInt(length - from + 1);
+
+            int[] previous = randomRow(length, 1000, r), forests = randomRow(length, 1000, r),
+                    subforests = randomRow(length, length, r), subtrees = randomRow(length + offset, 1000, r);
+            int[] expected = randomRow(length, 1000, r), actual = expected.clone();
+
+            for (int j = from; j < to; j++)
+                expected[j] = Math.min(previous[j] + insert, forests[subforests[j]] + subtrees[j + offset]);
+
+            relax.invoke(null, previous, insert, forests, subforests, subtrees, offset, actual, from, to);
+            for (int j = 0; j < length; j++)
+                assertEquals(expected[j], actual[j]);
+        }
+    }
+}
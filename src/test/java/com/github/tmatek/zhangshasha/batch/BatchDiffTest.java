@@ -0,0 +1,190 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import com.github.tmatek.zhangshasha.IndexedTree;
+import com.github.tmatek.zhangshasha.IndexedTreeDistance;
+import com.github.tmatek.zhangshasha.LabelCostModel;
+import com.github.tmatek.zhangshasha.LabelDictionary;
+import com.github.tmatek.zhangshasha.StringTreeNode;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public class BatchDiffTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private static final Pattern RESULT = Pattern.compile("\\{\"pair\":\"([^\"]+)\",(\"distance\":(\\d+)|\"error\")");
+
+    private Path first, second;
+
+    // the expected distances by file names
+    private Map<String, Integer> distances = new HashMap<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.first = Files.createTempDirectory("batch-first");
+        this.second = Files.createTempDirectory("batch-second");
+
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 40; i++) {
+            StringTreeNode t1 = StringTreeNode.randomTree(4, 4, r), t2 = StringTreeNode.randomTree(4, 4, r);
+            LabelDictionary labels = new LabelDictionary();
+            IndexedTree i1 = IndexedTree.of(t1, node -> labels.intern(node.toString())),
+                    i2 = IndexedTree.of(t2, node -> labels.intern(node.toString()));
+
+            write(this.first, "tree" + i + ".txt", t1.toTreeString());
+            write(this.second, "tree" + i + ".txt", t2.toTreeString());
+            this.distances.put("tree" + i + ".txt", IndexedTreeDistance.treeDistance(i1, i2, LabelCostModel.UNIT));
+        }
+
+        write(this.first, "doc.json", "{\"name\": \"a\", \"tags\": [\"x\", \"y\"]}");
+        write(this.second, "doc.json", "{\"name\": \"b\", \"tags\": [\"y\"]}");
+        this.distances.put("doc.json", 2);
+
+        write(this.first, "insert.txt", "a(b,d)");
+        write(this.second, "insert.txt", "a(b,c,d)");
+        this.distances.put("insert.txt", 1);
+
+        write(this.first, "case.txt", "a(B,c)");
+        write(this.second, "case.txt", "A(b,c)");
+        this.distances.put("case.txt", 2);
+
+        // an invalid file and a file without a counterpart
+        write(this.first, "invalid.txt", "a(b");
+        write(this.second, "invalid.txt", "a(b)");
+        write(this.first, "missing.txt", "a(b)");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Path directory : new Path[]{this.first, this.second}) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+
+        super.tearDown();
+    }
+
+    private static void write(Path directory, String name, String content) throws IOException {
+        Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String run(BatchDiff diff, BatchReport[] report) throws IOException {
+        StringWriter output = new StringWriter();
+        report[0] = diff.run(output);
+        return output.toString();
+    }
+
+    public void testDistances() throws IOException {
+        BatchDiff diff = new BatchDiff(this.first, this.second);
+        diff.setWorkers(3);
+        diff.setQueueCapacity(2);
+
+        BatchReport[] report = new BatchReport[1];
+        String[] lines = run(diff, report).split("\n");
+        assertEquals(45, lines.length);
+
+        int errors = 0;
+        for (String line : lines) {
+            Matcher result = RESULT.matcher(line);
+            assertTrue(line, result.lookingAt());
+            if (result.group(3) == null) {
+                errors++;
+                assertTrue(result.group(1).equals("invalid.txt") || result.group(1).equals("missing.txt"));
+            } else {
+                assertEquals(line, (int) this.distances.get(result.group(1)), Integer.parseInt(result.group(3)));
+            }
+        }
+
+        assertEquals(2, errors);
+        assertEquals(43, report[0].getPairCount());
+        assertEquals(2, report[0].getFailedPairCount());
+        assertTrue(report[0].getNodeCount() > 0 && report[0].getNodesPerSecond() > 0);
+        for (BatchStage stage : BatchStage.values())
+            assertTrue(report[0].getLatencies(stage).getCount() >= 43);
+
+        assertTrue(report[0].toString().contains("pairs/s"));
+    }
+
+    public void testEditScripts() throws IOException {
+        BatchDiff diff = new BatchDiff(this.first, this.second);
+        diff.setEditScripts(true);
+
+        String output = run(diff, new BatchReport[1]);
+        for (String line : output.split("\n")) {
+            Matcher result = RESULT.matcher(line);
+            assertTrue(result.lookingAt());
+            if (result.group(3) == null)
+                continue;
+
+            // every operation of the script costs 1
+            int operations = line.split("\"op\":").length - 1;
+            assertEquals(line, Integer.parseInt(result.group(3)), operations);
+        }
+
+        assertTrue(output.contains("{\"pair\":\"doc.json\",\"distance\":2,\"size1\":7,\"size2\":6,\"script\":["
+                + "{\"op\":\"delete\",\"node\":2,\"label\":\"x\"},"
+                + "{\"op\":\"rename\",\"node\":0,\"to\":0,\"label\":\"b\"}]}"));
+
+        // the inserted node c is the second of three children of the root
+        assertTrue(output.contains("{\"pair\":\"insert.txt\",\"distance\":1,\"size1\":3,\"size2\":4,\"script\":["
+                + "{\"op\":\"insert\",\"node\":1,\"parent\":3,\"position\":1,\"childCount\":3,\"label\":\"c\"}]}"));
+    }
+
+    public void testLabelCosts() throws IOException {
+        // the costs are given by the labels, whatever their IDs within a pair
+        BatchDiff diff = new BatchDiff(this.first, this.second);
+        diff.setEditScripts(true);
+        diff.setCosts(new LabelCosts() {
+            @Override
+            public int deleteCost(String label) {
+                return 1;
+            }
+
+            @Override
+            public int insertCost(String label) {
+                return 1;
+            }
+
+            @Override
+            public int renameCost(String from, String to) {
+                return from.equalsIgnoreCase(to) ? 0 : 1;
+            }
+        });
+
+        String output = run(diff, new BatchReport[1]);
+        assertTrue(output.contains("{\"pair\":\"case.txt\",\"distance\":0,\"size1\":3,\"size2\":3,\"script\":["
+                + "{\"op\":\"rename\",\"node\":0,\"to\":0,\"label\":\"b\"},"
+                + "{\"op\":\"rename\",\"node\":2,\"to\":2,\"label\":\"A\"}]}"));
+    }
+
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(50));
+
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1000L);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100000, histogram.getMaxNanos());
+        assertEquals(5050000, histogram.getTotalNanos());
+
+        // percentiles are bounded by the next power of two
+        assertTrue(histogram.getPercentileNanos(50) >= 50000 && histogram.getPercentileNanos(50) <= 65536);
+        assertEquals(100000, histogram.getPercentileNanos(100));
+    }
+}
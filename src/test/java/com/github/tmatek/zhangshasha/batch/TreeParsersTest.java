@@ -0,0 +1,128 @@
+package com.github.tmatek.zhangshasha.batch;
+
+import com.github.tmatek.zhangshasha.IndexedTree;
+import com.github.tmatek.zhangshasha.LabelDictionary;
+import com.github.tmatek.zhangshasha.StringTreeNode;
+import com.github.tmatek.zhangshasha.TreeNode;
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+public class TreeParsersTest extends TestCase {
+
+    private static long RANDOM_SEED = 9999; // used for reproducible tests using random trees
+
+    private static void assertInvalid(String text, boolean json) {
+        try {
+            if (json)
+                JsonParser.parse(text);
+            else
+                BracketParser.parse(text);
+
+            fail("Parsed invalid input " + text);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testBracketNotation() {
+        assertEquals(Arrays.asList("B", "C", "E", "D", "A"),
+                Arrays.asList(BracketParser.parse("A(B,C,D(E))").postorderLabels()));
+        assertEquals(Arrays.asList("b", "c d", "a"),
+                Arrays.asList(BracketParser.parse(" a ( b , c d )\n").postorderLabels()));
+        assertEquals(1, BracketParser.parse("a").size());
+
+        assertInvalid("", false);
+        assertInvalid("a(b", false);
+        assertInvalid("a(b))", false);
+        assertInvalid("a,b", false);
+        assertInvalid("a(b,,c)", false);
+        assertInvalid("a(b)c", false);
+
+        // the parsed trees equal the trees of the string representation
+        Random r = new Random();
+        r.setSeed(RANDOM_SEED);
+        for (int i = 0; i < 100; i++) {
+            StringTreeNode tree = StringTreeNode.randomTree(5, 4, r);
+            LabelDictionary labels = new LabelDictionary();
+            IndexedTree expected = IndexedTree.of(tree, node -> labels.intern(node.toString())),
+                    actual = BracketParser.parse(tree.toTreeString()).index(labels);
+
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.getLabel(j), actual.getLabel(j));
+                assertEquals(expected.getParent(j), actual.getParent(j));
+            }
+        }
+    }
+
+    public void testJson() {
+        assertEquals(Arrays.asList("1", "x", "[]", "a", "{}"),
+                Arrays.asList(JsonParser.parse("{\"a\": [1, \"x\"]}").postorderLabels()));
+        assertEquals(Arrays.asList("{}", "a", "[]", "b", "true", "c", "{}"),
+                Arrays.asList(JsonParser.parse(" {\"a\":{}, \"b\":[ ], \"c\":true}\n").postorderLabels()));
+        assertEquals(Arrays.asList("q\"\u00e9\n", "-1.5e3", "null", "[]"),
+                Arrays.asList(JsonParser.parse("[\"q\\\"\\u00e9\\n\", -1.5e3, null]").postorderLabels()));
+
+        assertInvalid("", true);
+        assertInvalid("{\"a\" 1}", true);
+        assertInvalid("[1,]", true);
+        assertInvalid("[1 2]", true);
+        assertInvalid("{1: 2}", true);
+        assertInvalid("[\"x]", true);
+        assertInvalid("[01]", true);
+        assertInvalid("[] []", true);
+    }
+
+    public void testDeepTrees() {
+        int depth = 100000;
+        StringBuilder bracket = new StringBuilder(), json = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            bracket.append("a(");
+            json.append('[');
+        }
+
+        bracket.append('b');
+        json.append('1');
+        for (int i = 0; i < depth; i++) {
+            bracket.append(')');
+            json.append(']');
+        }
+
+        IndexedTree tree = BracketParser.parse(bracket).index(new LabelDictionary());
+        assertEquals(depth + 1, tree.size());
+        assertEquals(depth - 1, tree.getParent(depth - 2));
+        assertEquals(depth + 1, JsonParser.parse(json).index(new LabelDictionary()).size());
+    }
+
+    public void testEncodedText() {
+        // labels with multi-byte characters span the chunks in which the bytes are decoded
+        StringBuilder bracket = new StringBuilder("r("), json = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            bracket.append(i == 0 ? "" : ",").append("\u017e").append(i);
+            json.append(i == 0 ? "" : ",").append("\"\u017e").append(i).append('"');
+        }
+
+        bracket.append(')');
+        json.append(']');
+
+        String[] labels = BracketParser.parse(new CharStream(ByteBuffer.wrap(bracket.toString()
+                .getBytes(StandardCharsets.UTF_8)))).postorderLabels();
+        assertEquals(5001, labels.length);
+        assertEquals("\u017e4999", labels[4999]);
+
+        String[] values = JsonParser.parse(new CharStream(ByteBuffer.wrap(json.toString()
+                .getBytes(StandardCharsets.UTF_8)))).postorderLabels();
+        assertEquals(Arrays.asList(labels).subList(0, 5000), Arrays.asList(values).subList(0, 5000));
+
+        try {
+            BracketParser.parse(new CharStream(ByteBuffer.wrap(new byte[]{'a', '(', (byte) 0xff, ')'})));
+            fail("Parsed invalid UTF-8");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}